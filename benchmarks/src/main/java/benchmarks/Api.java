@@ -0,0 +1,255 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Iterator;
+
+/**
+ * Entry points into the benchmarked classes.
+ * The stack and playlist classes live in the unnamed package, which cannot be referenced from a named
+ * package, and JMH does not accept benchmarks in the unnamed package. The benchmarks therefore call them
+ * through method handles held in static final fields, which the JIT compiles to direct calls.
+ */
+final class Api {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    static final Class<?> SONG = load("Song");
+    static final Class<?> GENRE = load("Song$Genre");
+    static final Class<?> ORDER = load("ScanningOrder");
+    static final Class<?> PLAYLIST = load("Playlist");
+    static final Class<?> QUERY = load("SongQuery");
+    static final Class<?> ARRAY_STACK = load("ArrayStack");
+
+    private static final MethodHandle NEW_SONG = constructor(SONG,
+            MethodType.methodType(void.class, String.class, String.class, GENRE, int.class));
+    private static final MethodHandle NEW_PLAYLIST = constructor(PLAYLIST, MethodType.methodType(void.class));
+    private static final MethodHandle ADD_SONG = method(PLAYLIST, "addSong", MethodType.methodType(void.class, SONG));
+    private static final MethodHandle REMOVE_SONG = method(PLAYLIST, "removeSong",
+            MethodType.methodType(boolean.class, SONG));
+    private static final MethodHandle CLONE_PLAYLIST = method(PLAYLIST, "clone", MethodType.methodType(PLAYLIST));
+    private static final MethodHandle FILTER_ARTIST = method(PLAYLIST, "filterArtist",
+            MethodType.methodType(void.class, String.class));
+    private static final MethodHandle FILTER_GENRE = method(PLAYLIST, "filterGenre",
+            MethodType.methodType(void.class, GENRE));
+    private static final MethodHandle FILTER_DURATION = method(PLAYLIST, "filterDuration",
+            MethodType.methodType(void.class, int.class));
+    private static final MethodHandle SET_SCANNING_ORDER = method(PLAYLIST, "setScanningOrder",
+            MethodType.methodType(void.class, ORDER));
+    private static final MethodHandle QUERY_ALL = staticField(QUERY, "ALL");
+    private static final MethodHandle WITH_ARTIST = method(QUERY, "withArtist",
+            MethodType.methodType(QUERY, String.class));
+    private static final MethodHandle WITH_ORDER = method(QUERY, "withOrder", MethodType.methodType(QUERY, ORDER));
+    private static final MethodHandle WITH_OFFSET = method(QUERY, "withOffset",
+            MethodType.methodType(QUERY, int.class));
+    private static final MethodHandle WITH_LIMIT = method(QUERY, "withLimit", MethodType.methodType(QUERY, int.class));
+    private static final MethodHandle QUERY_ITERATOR = method(PLAYLIST, "iterator",
+            MethodType.methodType(Iterator.class, QUERY));
+    private static final MethodHandle NEW_ARRAY_STACK = constructor(ARRAY_STACK,
+            MethodType.methodType(void.class, int.class));
+    private static final MethodHandle PUSH = method(ARRAY_STACK, "push",
+            MethodType.methodType(void.class, Cloneable.class));
+    private static final MethodHandle POP = method(ARRAY_STACK, "pop", MethodType.methodType(Cloneable.class));
+    private static final MethodHandle CLONE_STACK = method(ARRAY_STACK, "clone", MethodType.methodType(ARRAY_STACK));
+
+    private Api() {
+    }
+
+    static Object genre(String name) {
+        return enumConstant(GENRE, name);
+    }
+
+    static Object order(String name) {
+        return enumConstant(ORDER, name);
+    }
+
+    static Object newSong(String name, String artist, Object genre, int duration) {
+        try {
+            return NEW_SONG.invokeExact((Object) name, (Object) artist, genre, duration);
+        } catch (Throwable e) {
+            throw failure(e);
+        }
+    }
+
+    static Object newPlaylist() {
+        try {
+            return NEW_PLAYLIST.invokeExact();
+        } catch (Throwable e) {
+            throw failure(e);
+        }
+    }
+
+    static void addSong(Object playlist, Object song) {
+        try {
+            ADD_SONG.invokeExact(playlist, song);
+        } catch (Throwable e) {
+            throw failure(e);
+        }
+    }
+
+    static boolean removeSong(Object playlist, Object song) {
+        try {
+            return (boolean) REMOVE_SONG.invokeExact(playlist, song);
+        } catch (Throwable e) {
+            throw failure(e);
+        }
+    }
+
+    static Object clonePlaylist(Object playlist) {
+        try {
+            return CLONE_PLAYLIST.invokeExact(playlist);
+        } catch (Throwable e) {
+            throw failure(e);
+        }
+    }
+
+    static void filterArtist(Object playlist, String artist) {
+        try {
+            FILTER_ARTIST.invokeExact(playlist, (Object) artist);
+        } catch (Throwable e) {
+            throw failure(e);
+        }
+    }
+
+    static void filterGenre(Object playlist, Object genre) {
+        try {
+            FILTER_GENRE.invokeExact(playlist, genre);
+        } catch (Throwable e) {
+            throw failure(e);
+        }
+    }
+
+    static void filterDuration(Object playlist, int maxDuration) {
+        try {
+            FILTER_DURATION.invokeExact(playlist, maxDuration);
+        } catch (Throwable e) {
+            throw failure(e);
+        }
+    }
+
+    static void setScanningOrder(Object playlist, Object order) {
+        try {
+            SET_SCANNING_ORDER.invokeExact(playlist, order);
+        } catch (Throwable e) {
+            throw failure(e);
+        }
+    }
+
+    /**
+     * Builds a query in the given order, with an optional artist filter and the given page.
+     */
+    static Object query(Object order, String artist, int offset, int limit) {
+        try {
+            Object query = WITH_ORDER.invokeExact(QUERY_ALL.invokeExact(), order);
+            if (artist != null) {
+                query = WITH_ARTIST.invokeExact(query, (Object) artist);
+            }
+            query = WITH_OFFSET.invokeExact(query, offset);
+            return WITH_LIMIT.invokeExact(query, limit);
+        } catch (Throwable e) {
+            throw failure(e);
+        }
+    }
+
+    static Iterator<?> iterator(Object playlist, Object query) {
+        try {
+            return (Iterator<?>) (Object) QUERY_ITERATOR.invokeExact(playlist, query);
+        } catch (Throwable e) {
+            throw failure(e);
+        }
+    }
+
+    static Object newArrayStack(int maxCapacity) {
+        try {
+            return NEW_ARRAY_STACK.invokeExact(maxCapacity);
+        } catch (Throwable e) {
+            throw failure(e);
+        }
+    }
+
+    static void push(Object stack, Object element) {
+        try {
+            PUSH.invokeExact(stack, element);
+        } catch (Throwable e) {
+            throw failure(e);
+        }
+    }
+
+    static Object pop(Object stack) {
+        try {
+            return POP.invokeExact(stack);
+        } catch (Throwable e) {
+            throw failure(e);
+        }
+    }
+
+    static Object cloneStack(Object stack) {
+        try {
+            return CLONE_STACK.invokeExact(stack);
+        } catch (Throwable e) {
+            throw failure(e);
+        }
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Object enumConstant(Class<?> type, String name) {
+        for (Object constant : type.getEnumConstants()) {
+            if (((Enum<?>) constant).name().equals(name)) {
+                return constant;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    /**
+     * Looks up a constructor and erases its types to Object, so it can be called with invokeExact.
+     */
+    private static MethodHandle constructor(Class<?> type, MethodType signature) {
+        try {
+            return LOOKUP.findConstructor(type, signature).asType(signature.changeReturnType(type).erase());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Looks up a public static field and erases its type to Object, so it can be read with invokeExact.
+     */
+    private static MethodHandle staticField(Class<?> type, String name) {
+        try {
+            MethodHandle handle = LOOKUP.findStaticGetter(type, name, type);
+            return handle.asType(handle.type().erase());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Looks up a public method and erases its types to Object, so it can be called with invokeExact.
+     */
+    private static MethodHandle method(Class<?> type, String name, MethodType signature) {
+        try {
+            MethodHandle handle = LOOKUP.findVirtual(type, name, signature);
+            return handle.asType(handle.type().erase());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static RuntimeException failure(Throwable e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new IllegalStateException(e);
+    }
+}
@@ -0,0 +1,44 @@
+package benchmarks;
+
+import java.util.Random;
+
+/**
+ * Generates reproducible songs for the playlist benchmarks.
+ * Artists, genres and durations are spread so that each filter used by the scan benchmarks
+ * keeps a small share of the songs.
+ */
+final class Catalog {
+    static final String SELECTED_ARTIST = "artist-0";
+    static final String SELECTED_GENRE = "JAZZ";
+    static final int SELECTED_MAX_DURATION = 120;
+
+    private static final String[] GENRES = {"POP", "ROCK", "HIP_HOP", "COUNTRY", "JAZZ", "DISCO"};
+
+    private Catalog() {
+    }
+
+    /**
+     * Creates the given number of distinct songs, about a hundred per artist,
+     * with durations between one and ten minutes.
+     */
+    static Object[] songs(int count) {
+        Random random = new Random(42);
+        int artists = Math.max(1, count / 100);
+        Object[] songs = new Object[count];
+        for (int i = 0; i < count; i++) {
+            String artist = "artist-" + random.nextInt(artists);
+            Object genre = Api.genre(GENRES[random.nextInt(GENRES.length)]);
+            songs[i] = Api.newSong("song-" + Integer.toHexString(random.nextInt()) + "-" + i, artist, genre,
+                    60 + random.nextInt(540));
+        }
+        return songs;
+    }
+
+    static Object playlist(Object[] songs) {
+        Object playlist = Api.newPlaylist();
+        for (Object song : songs) {
+            Api.addSong(playlist, song);
+        }
+        return playlist;
+    }
+}
@@ -0,0 +1,25 @@
+package benchmarks;
+
+/**
+ * A minimal stack element, cloned through its public clone method like the elements of the Part A tests.
+ */
+public final class Element implements Cloneable {
+    private final int value;
+
+    public Element(int value) {
+        this.value = value;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    @Override
+    public Element clone() {
+        try {
+            return (Element) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks the Playlist operations that change or compare whole playlists of the given size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlaylistBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    private int size;
+
+    private Object[] songs;
+    private Object playlist;
+    private Object equalPlaylist;
+    private Object middleSong;
+
+    @Setup
+    public void setUp() {
+        songs = Catalog.songs(size);
+        playlist = Catalog.playlist(songs);
+        equalPlaylist = Catalog.playlist(songs);
+        middleSong = songs[size / 2];
+    }
+
+    /**
+     * Builds a playlist of all the songs, one addSong at a time.
+     */
+    @Benchmark
+    public Object addSongs() {
+        return Catalog.playlist(songs);
+    }
+
+    /**
+     * Removes a song from the middle of the playlist and adds it back at the end.
+     */
+    @Benchmark
+    public boolean removeAndAddSong() {
+        boolean removed = Api.removeSong(playlist, middleSong);
+        Api.addSong(playlist, middleSong);
+        return removed;
+    }
+
+    @Benchmark
+    public Object cloneOnly() {
+        return Api.clonePlaylist(playlist);
+    }
+
+    /**
+     * Clones the playlist and iterates over the clone, which needs songs of its own.
+     */
+    @Benchmark
+    public void cloneAndIterate(Blackhole blackhole) {
+        for (Object song : (Iterable<?>) Api.clonePlaylist(playlist)) {
+            blackhole.consume(song);
+        }
+    }
+
+    @Benchmark
+    public boolean equalPlaylists() {
+        return playlist.equals(equalPlaylist);
+    }
+
+    @Benchmark
+    public int hashPlaylist() {
+        return playlist.hashCode();
+    }
+}
@@ -0,0 +1,59 @@
+package benchmarks;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks reading one page of an ordered playlist through a query with an offset and a limit.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlaylistPageBenchmark {
+
+    @Param({"100000", "1000000"})
+    private int size;
+
+    @Param({"NAME", "DURATION"})
+    private String order;
+
+    @Param({"NONE", "ARTIST"})
+    private String filter;
+
+    @Param({"0", "1000"})
+    private int offset;
+
+    @Param({"50"})
+    private int limit;
+
+    private Object playlist;
+    private Object query;
+
+    @Setup
+    public void setUp() {
+        playlist = Catalog.playlist(Catalog.songs(size));
+        query = Api.query(Api.order(order), filter.equals("ARTIST") ? Catalog.SELECTED_ARTIST : null, offset, limit);
+    }
+
+    @Benchmark
+    public void page(Blackhole blackhole) {
+        for (Iterator<?> songs = Api.iterator(playlist, query); songs.hasNext(); ) {
+            blackhole.consume(songs.next());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks a full iteration over a playlist for every scanning order and filter combination.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlaylistScanBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    private int size;
+
+    @Param({"ADDING", "NAME", "DURATION", "SHUFFLE"})
+    private String order;
+
+    /**
+     * NONE scans every song, ALL combines the artist, genre and duration filters.
+     */
+    @Param({"NONE", "ARTIST", "GENRE", "DURATION", "ALL"})
+    private String filter;
+
+    private Object playlist;
+
+    @Setup
+    public void setUp() {
+        playlist = Catalog.playlist(Catalog.songs(size));
+        Api.setScanningOrder(playlist, Api.order(order));
+        if (filter.equals("ARTIST") || filter.equals("ALL")) {
+            Api.filterArtist(playlist, Catalog.SELECTED_ARTIST);
+        }
+        if (filter.equals("GENRE") || filter.equals("ALL")) {
+            Api.filterGenre(playlist, Api.genre(Catalog.SELECTED_GENRE));
+        }
+        if (filter.equals("DURATION") || filter.equals("ALL")) {
+            Api.filterDuration(playlist, Catalog.SELECTED_MAX_DURATION);
+        }
+    }
+
+    @Benchmark
+    public void scan(Blackhole blackhole) {
+        for (Object song : (Iterable<?>) playlist) {
+            blackhole.consume(song);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks ArrayStack push, pop, iteration and clone on stacks of the given size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StackBenchmark {
+
+    @Param({"10", "1000", "100000", "1000000"})
+    private int size;
+
+    private Element[] elements;
+    private Object fullStack;
+    private Object emptyStack;
+
+    @Setup
+    public void setUp() {
+        elements = new Element[size];
+        for (int i = 0; i < size; i++) {
+            elements[i] = new Element(i);
+        }
+        emptyStack = Api.newArrayStack(size);
+        fullStack = Api.newArrayStack(size);
+        for (Element element : elements) {
+            Api.push(fullStack, element);
+        }
+    }
+
+    /**
+     * Allocates a stack and fills it.
+     */
+    @Benchmark
+    public Object push() {
+        Object stack = Api.newArrayStack(size);
+        for (Element element : elements) {
+            Api.push(stack, element);
+        }
+        return stack;
+    }
+
+    /**
+     * Fills an existing stack and empties it again; the difference with {@link #push()} is the cost of the pops.
+     */
+    @Benchmark
+    public void pushPop(Blackhole blackhole) {
+        for (Element element : elements) {
+            Api.push(emptyStack, element);
+        }
+        for (int i = 0; i < size; i++) {
+            blackhole.consume(Api.pop(emptyStack));
+        }
+    }
+
+    @Benchmark
+    public void iterate(Blackhole blackhole) {
+        for (Object element : (Iterable<?>) fullStack) {
+            blackhole.consume(element);
+        }
+    }
+
+    @Benchmark
+    public Object cloneStack() {
+        return Api.cloneStack(fullStack);
+    }
+}
@@ -1,6 +1,8 @@
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.util.Iterator;
+import java.util.function.UnaryOperator;
 
 /**
  * An implementation of the Stack interface using an array.
@@ -8,21 +10,52 @@ import java.util.Iterator;
  * @param <E> the type of elements in the stack
  */
 public class ArrayStack<E extends Cloneable> implements Stack<E> {
+
+    /**
+     * The public clone method of each element class, looked up once per class.
+     */
+    private static final ClassValue<MethodHandle> CLONE_METHODS = new ClassValue<MethodHandle>() {
+        @Override
+        protected MethodHandle computeValue(Class<?> type) {
+            try {
+                return MethodHandles.lookup().unreflect(type.getMethod("clone"))
+                        .asType(MethodType.methodType(Object.class, Object.class));
+            } catch (NoSuchMethodException | IllegalAccessException e) {
+                throw new StackCloneException(e);
+            }
+        }
+    };
+
     private Cloneable[] arr;
     private int maxCapacity;
     private int top;
+    private final UnaryOperator<E> copier;
 
     /**
      * Constructs a new ArrayStack with the specified maximum capacity.
+     * Its elements are copied by their public clone method when the stack is cloned.
      *
      * @param maxCapacity the maximum capacity of the stack
      * @throws NegativeCapacityException if the specified maximum capacity is negative
      */
     public ArrayStack(int maxCapacity) throws NegativeCapacityException {
+        this(maxCapacity, ArrayStack::cloneElement);
+    }
+
+    /**
+     * Constructs a new ArrayStack with the specified maximum capacity,
+     * whose elements are copied by the given copier when the stack is cloned.
+     *
+     * @param maxCapacity the maximum capacity of the stack
+     * @param copier      the function returning a copy of an element
+     * @throws NegativeCapacityException if the specified maximum capacity is negative
+     */
+    public ArrayStack(int maxCapacity, UnaryOperator<E> copier) throws NegativeCapacityException {
         if (maxCapacity < 0) {
             throw new NegativeCapacityException();
         }
         this.maxCapacity = maxCapacity;
+        this.copier = copier;
         arr = new Cloneable[maxCapacity];
         top = -1;
     }
@@ -68,27 +101,47 @@ public class ArrayStack<E extends Cloneable> implements Stack<E> {
         return (top == -1);
     }
 
+    /**
+     * Creates and returns a clone of the stack, holding copies of its elements made by the stack's copier.
+     *
+     * @return a clone of the stack
+     * @throws StackCloneException if an element cannot be copied
+     */
     @Override
     public ArrayStack<E> clone() {
         ArrayStack<E> copyStack;
         try {
             copyStack = (ArrayStack<E>) super.clone();
         } catch (CloneNotSupportedException e) {
-            return null;
+            throw new StackCloneException(e);
         }
 
         copyStack.arr = new Cloneable[this.maxCapacity];
         for (int i = 0; i < this.size(); i++) {
-            try {
-                Method cloneMethod = this.arr[i].getClass().getMethod("clone");
-                copyStack.arr[i] = (Cloneable) cloneMethod.invoke(this.arr[i]);
-            } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
-                return null;
-            }
+            copyStack.arr[i] = copier.apply((E) this.arr[i]);
         }
         return copyStack;
     }
 
+    /**
+     * Copies an element by calling its public clone method.
+     *
+     * @param element the element to copy
+     * @param <E>     the type of the element
+     * @return the copy of the element
+     * @throws StackCloneException if the element has no accessible clone method, or its clone method fails
+     */
+    static <E extends Cloneable> E cloneElement(E element) {
+        MethodHandle cloneMethod = CLONE_METHODS.get(element.getClass());
+        try {
+            return (E) (Object) cloneMethod.invokeExact((Object) element);
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new StackCloneException(e);
+        }
+    }
+
     @Override
     public Iterator<E> iterator() {
         return new StackIterator();
@@ -0,0 +1,641 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The ColumnarPlaylist class is a Playlist for very large collections of songs, stored column by column
+ * instead of as Song objects: names and artists are dictionary-encoded to int ids, genres are packed
+ * as byte ordinals and durations are kept in an int array.
+ * Songs are only materialized when the playlist is iterated over, as new Song objects holding the
+ * stored values; changing them does not change the playlist.
+ * It implements the Cloneable, Iterable, FilteredSongIterable, and OrderedSongIterable interfaces.
+ */
+public class ColumnarPlaylist implements Cloneable, Iterable<Song>, FilteredSongIterable, OrderedSongIterable {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int REMOVED = -1;
+    private static final int ANY_ARTIST = -1;
+    private static final byte NO_GENRE = -1;
+    private static final Song.Genre[] GENRES = Song.Genre.values();
+
+    private StringDictionary names;
+    private StringDictionary artists;
+    private int[] nameIds;
+    private int[] artistIds;
+    private byte[] genres;
+    private int[] durations;
+    private int end;
+    private int size;
+    private int hash;
+    private RowTable rows;
+    private int[] nameRanks;
+
+    private SongQuery query = SongQuery.ALL;
+
+    /**
+     * Constructs an empty ColumnarPlaylist.
+     */
+    public ColumnarPlaylist() {
+        this(new StringDictionary(), new StringDictionary());
+    }
+
+    /**
+     * Constructs an empty ColumnarPlaylist that encodes names and artists with the ids of a pool.
+     * Playlists built on the same pool share these dictionaries, so each string is stored once
+     * for all of them and their songs are compared by id.
+     *
+     * @param pool the pool whose ids to use
+     */
+    public ColumnarPlaylist(SongPool pool) {
+        this(pool.names(), pool.artists());
+    }
+
+    private ColumnarPlaylist(StringDictionary names, StringDictionary artists) {
+        this.names = names;
+        this.artists = artists;
+        this.nameIds = new int[INITIAL_CAPACITY];
+        this.artistIds = new int[INITIAL_CAPACITY];
+        this.genres = new byte[INITIAL_CAPACITY];
+        this.durations = new int[INITIAL_CAPACITY];
+        this.rows = new RowTable(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs a ColumnarPlaylist with the given songs, in the order they are iterated over.
+     *
+     * @param songs the songs to add
+     * @throws SongAlreadyExistsException if the same song appears more than once
+     */
+    public ColumnarPlaylist(Iterable<Song> songs) {
+        this();
+        for (Song song : songs)
+            addSong(song);
+    }
+
+    /**
+     * Returns the number of songs in the playlist.
+     *
+     * @return the number of songs in the playlist
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds a song to the playlist, storing its current values.
+     *
+     * @param song the song to add
+     * @throws SongAlreadyExistsException if the song already exists in the playlist
+     */
+    public void addSong(Song song) {
+        int nameId = names.encode(song.getName());
+        int artistId = artists.encode(song.getArtist());
+        if (!rows.putIfAbsent(key(nameId, artistId), end))
+            throw new SongAlreadyExistsException();
+        if (end == nameIds.length)
+            grow();
+        nameIds[end] = nameId;
+        artistIds[end] = artistId;
+        genres[end] = (song.getGenre() == null) ? NO_GENRE : (byte) song.getGenre().ordinal();
+        durations[end] = song.getDuration();
+        end++;
+        size++;
+        hash += song.hashCode();
+    }
+
+    /**
+     * Removes a song from the playlist.
+     * The song's row is marked as removed and reclaimed once more than half of the rows are removed.
+     *
+     * @param song the song to remove
+     * @return true if the song was removed, false otherwise
+     */
+    public boolean removeSong(Song song) {
+        int nameId = names.idOf(song.getName());
+        int artistId = artists.idOf(song.getArtist());
+        if (nameId < 0 || artistId < 0)
+            return false;
+        int row = rows.remove(key(nameId, artistId));
+        if (row < 0)
+            return false;
+        nameIds[row] = REMOVED;
+        size--;
+        hash -= song.hashCode();
+        if (end - size > end / 2)
+            compact();
+        return true;
+    }
+
+    /**
+     * Checks whether the playlist contains a song equal to the given one.
+     *
+     * @param song the song to look for
+     * @return true if an equal song is in the playlist, false otherwise
+     */
+    public boolean contains(Song song) {
+        int nameId = names.idOf(song.getName());
+        int artistId = artists.idOf(song.getArtist());
+        return nameId >= 0 && artistId >= 0 && rows.get(key(nameId, artistId)) >= 0;
+    }
+
+    /**
+     * Returns a string representation of the playlist, in the same format as {@link Playlist#toString()}.
+     *
+     * @return a string representation of the playlist
+     */
+    @Override
+    public String toString() {
+        StringBuilder playlistString = new StringBuilder("[");
+        for (int row = 0; row < end; row++) {
+            if (nameIds[row] == REMOVED)
+                continue;
+            if (playlistString.length() > 1)
+                playlistString.append(", ");
+            playlistString.append("(").append(songAt(row).toString()).append(")");
+        }
+        return playlistString.append("]").toString();
+    }
+
+    /**
+     * Creates a copy of the playlist. The copy shares the (append-only) name and artist dictionaries
+     * and gets copies of the columns.
+     *
+     * @return a clone of the playlist
+     */
+    @Override
+    public ColumnarPlaylist clone() {
+        ColumnarPlaylist copyPlaylist;
+        try {
+            copyPlaylist = (ColumnarPlaylist) super.clone();
+        } catch (CloneNotSupportedException e) {
+            return null;
+        }
+        copyPlaylist.nameIds = nameIds.clone();
+        copyPlaylist.artistIds = artistIds.clone();
+        copyPlaylist.genres = genres.clone();
+        copyPlaylist.durations = durations.clone();
+        copyPlaylist.rows = rows.copy();
+        return copyPlaylist;
+    }
+
+    /**
+     * Checks if the playlist is equal to another object.
+     * Two columnar playlists are equal if they contain the same songs, regardless of their order.
+     *
+     * @param other the object to compare
+     * @return true if the objects are equal, false otherwise
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ColumnarPlaylist)) {
+            return false;
+        }
+        ColumnarPlaylist otherPlayList = (ColumnarPlaylist) other;
+        if (this.size != otherPlayList.size || this.hash != otherPlayList.hash) {
+            return false;
+        }
+        boolean sameDictionaries = this.names == otherPlayList.names && this.artists == otherPlayList.artists;
+        for (int row = 0; row < end; row++) {
+            if (nameIds[row] == REMOVED)
+                continue;
+            if (sameDictionaries) {
+                if (otherPlayList.rows.get(key(nameIds[row], artistIds[row])) < 0)
+                    return false;
+            } else {
+                int nameId = otherPlayList.names.idOf(names.decode(nameIds[row]));
+                int artistId = otherPlayList.artists.idOf(artists.decode(artistIds[row]));
+                if (nameId < 0 || artistId < 0 || otherPlayList.rows.get(key(nameId, artistId)) < 0)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the hash code of the playlist, the sum of the hash codes of its songs,
+     * as for {@link Playlist#hashCode()}.
+     *
+     * @return the hash code of the playlist
+     */
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * Returns an iterator over the songs in the playlist, materializing each song as it is reached.
+     *
+     * @return an iterator over the songs in the playlist
+     */
+    @Override
+    public Iterator<Song> iterator() {
+        return iterator(query);
+    }
+
+    /**
+     * Returns an iterator over the songs in the playlist selected by a query, in the order of the query.
+     * The filters and scanning order set on the playlist are not used and not changed, so any number of
+     * threads may run their own queries on the playlist at once, as long as none of them modifies it.
+     *
+     * @param query the query to run
+     * @return an iterator over the songs selected by the query
+     */
+    public Iterator<Song> iterator(SongQuery query) {
+        return new ColumnarIterator(query);
+    }
+
+    /**
+     * Filters the songs in the playlist by artist, for the scans that use the filters set on it.
+     *
+     * @param artist the artist to filter by
+     */
+    @Override
+    public void filterArtist(String artist) {
+        this.query = query.withArtist(artist);
+    }
+
+    /**
+     * Filters the songs in the playlist by genre, for the scans that use the filters set on it.
+     *
+     * @param genre the genre to filter by
+     */
+    @Override
+    public void filterGenre(Song.Genre genre) {
+        this.query = query.withGenre(genre);
+    }
+
+    /**
+     * Filters the songs in the playlist by duration, for the scans that use the filters set on it.
+     *
+     * @param maxDuration the maximum duration to filter by
+     */
+    @Override
+    public void filterDuration(int maxDuration) {
+        this.query = query.withMaxDuration(maxDuration);
+    }
+
+    /**
+     * Sets the scanning order of the scans that use the filters and scanning order set on the playlist.
+     *
+     * @param order the scanning order to set
+     */
+    @Override
+    public void setScanningOrder(ScanningOrder order) {
+        this.query = query.withOrder(order);
+    }
+
+    /**
+     * Sets the seed of the shuffled scanning order. Scans in that order visit the songs in the same
+     * order for the same seed, and in another one for another seed.
+     *
+     * @param seed the seed of the shuffled order
+     */
+    public void setShuffleSeed(long seed) {
+        this.query = query.withSeed(seed);
+    }
+
+    /**
+     * Returns the current scanning order of the playlist.
+     *
+     * @return the scanning order of the playlist
+     */
+    public ScanningOrder getOrder() {
+        return query.getOrder();
+    }
+
+    /**
+     * Returns the query made of the filters and scanning order currently set on the playlist,
+     * which is what iterator() runs.
+     *
+     * @return the current query of the playlist
+     */
+    public SongQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * Creates a Song holding the values stored in a row.
+     *
+     * @param row a row holding a song
+     * @return the song
+     */
+    private Song songAt(int row) {
+        Song.Genre genre = (genres[row] == NO_GENRE) ? null : GENRES[genres[row]];
+        return new Song(names.decode(nameIds[row]), artists.decode(artistIds[row]), genre, durations[row]);
+    }
+
+    /**
+     * Returns the rank of each name id in alphabetical order of the names, recomputing it when
+     * names were added to the dictionary since it was last computed.
+     * It is recomputed under the playlist's lock, as concurrent queries may need it at the same time.
+     *
+     * @return the rank of each name id
+     */
+    private synchronized int[] nameRanks() {
+        if (nameRanks == null || nameRanks.length != names.size()) {
+            Integer[] byName = new Integer[names.size()];
+            for (int id = 0; id < byName.length; id++)
+                byName[id] = id;
+            Arrays.sort(byName, (first, second) -> names.decode(first).compareTo(names.decode(second)));
+            nameRanks = new int[byName.length];
+            for (int rank = 0; rank < byName.length; rank++)
+                nameRanks[byName[rank]] = rank;
+        }
+        return nameRanks;
+    }
+
+    private void grow() {
+        int capacity = nameIds.length * 2;
+        nameIds = Arrays.copyOf(nameIds, capacity);
+        artistIds = Arrays.copyOf(artistIds, capacity);
+        genres = Arrays.copyOf(genres, capacity);
+        durations = Arrays.copyOf(durations, capacity);
+    }
+
+    /**
+     * Moves the remaining rows over the removed ones, keeping their adding order, and re-indexes them.
+     */
+    private void compact() {
+        int live = 0;
+        rows = new RowTable(Math.max(INITIAL_CAPACITY, size));
+        for (int row = 0; row < end; row++) {
+            if (nameIds[row] == REMOVED)
+                continue;
+            nameIds[live] = nameIds[row];
+            artistIds[live] = artistIds[row];
+            genres[live] = genres[row];
+            durations[live] = durations[row];
+            rows.putIfAbsent(key(nameIds[live], artistIds[live]), live);
+            live++;
+        }
+        end = live;
+    }
+
+    private static long key(int nameId, int artistId) {
+        return ((long) nameId << 32) | (artistId & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Selects the k smallest of the first count keys and returns them sorted, keeping the smallest
+     * keys seen so far in a max-heap of size k, which takes O(count log k).
+     *
+     * @param keys  the keys to select from
+     * @param count the number of keys
+     * @param k     the number of keys to select, smaller than count
+     * @return the k smallest keys, in ascending order
+     */
+    private static long[] smallest(long[] keys, int count, int k) {
+        long[] heap = new long[k];
+        if (k == 0)
+            return heap;
+        for (int i = 0; i < count; i++) {
+            long key = keys[i];
+            if (i < k) {
+                int child = i;
+                while (child > 0 && heap[(child - 1) / 2] < key) {
+                    heap[child] = heap[(child - 1) / 2];
+                    child = (child - 1) / 2;
+                }
+                heap[child] = key;
+            } else if (key < heap[0]) {
+                int parent = 0;
+                while (true) {
+                    int child = 2 * parent + 1;
+                    if (child >= k)
+                        break;
+                    if (child + 1 < k && heap[child + 1] > heap[child])
+                        child++;
+                    if (heap[child] <= key)
+                        break;
+                    heap[parent] = heap[child];
+                    parent = child;
+                }
+                heap[parent] = key;
+            }
+        }
+        Arrays.sort(heap);
+        return heap;
+    }
+
+    /**
+     * The ColumnarIterator class represents an iterator over the rows of the playlist that pass its filters.
+     * Rows are scanned lazily in adding order, or in the order of a {@link ShufflePermutation} of the rows;
+     * for the other orders the matching rows are collected with their sort key and sorted as primitive
+     * longs first.
+     */
+    private class ColumnarIterator implements Iterator<Song> {
+
+        private final int artistId;
+        private final byte genre;
+        private final int maxDuration;
+        private final long[] sortedRows;
+        private final ShufflePermutation permutation;
+        private int remaining;
+        private int i;
+        private int nextRow;
+
+        /**
+         * Constructs a ColumnarIterator running the given query over the rows of the playlist.
+         *
+         * @param query the query to run
+         */
+        public ColumnarIterator(SongQuery query) {
+            String artist = query.getArtist();
+            this.artistId = (artist == null) ? ANY_ARTIST : artists.idOf(artist);
+            this.genre = (query.getGenre() == null) ? NO_GENRE : (byte) query.getGenre().ordinal();
+            this.maxDuration = query.getMaxDuration();
+            this.remaining = query.getLimit();
+            this.nextRow = -1;
+            this.permutation = (query.getOrder() == ScanningOrder.SHUFFLE)
+                    ? new ShufflePermutation(end, query.getSeed()) : null;
+            if ((artist != null && artistId < 0) || remaining == 0) {
+                this.sortedRows = new long[0];
+            } else if (query.getOrder() == ScanningOrder.ADDING || permutation != null) {
+                this.sortedRows = null;
+                for (int skipped = 0; skipped < query.getOffset() && nextRow < end; skipped++)
+                    step();
+            } else {
+                this.sortedRows = sortedMatchingRows(query.getOrder(), query.getEnd());
+                this.i = Math.min(query.getOffset(), sortedRows.length);
+            }
+            advance();
+        }
+
+        private boolean matches(int row) {
+            return nameIds[row] != REMOVED &&
+                    (artistId == ANY_ARTIST || artistIds[row] == artistId) &&
+                    (genre == NO_GENRE || genres[row] == genre) &&
+                    durations[row] <= maxDuration;
+        }
+
+        /**
+         * Collects the matching rows, each packed with its sort key in the high half, and sorts them.
+         * When only the first few rows are needed, only these are selected and sorted.
+         */
+        private long[] sortedMatchingRows(ScanningOrder order, int needed) {
+            int[] ranks = (order == ScanningOrder.NAME) ? nameRanks() : null;
+            long[] keys = new long[size];
+            int count = 0;
+            for (int row = 0; row < end; row++) {
+                if (matches(row)) {
+                    long sortKey = (order == ScanningOrder.NAME) ? ranks[nameIds[row]] : durations[row];
+                    keys[count++] = (sortKey << 32) | row;
+                }
+            }
+            if (needed < count / 2)
+                return smallest(keys, count, needed);
+            keys = Arrays.copyOf(keys, count);
+            Arrays.sort(keys);
+            return keys;
+        }
+
+        private void advance() {
+            if (sortedRows != null) {
+                nextRow = (i < sortedRows.length && remaining-- > 0) ? (int) sortedRows[i++] : -1;
+                return;
+            }
+            if (remaining-- <= 0) {
+                nextRow = end;
+                return;
+            }
+            step();
+        }
+
+        /**
+         * Moves to the next matching row in adding or shuffled order, or to the end if there is none.
+         */
+        private void step() {
+            if (permutation != null) {
+                while (i < end) {
+                    int row = permutation.get(i++);
+                    if (matches(row)) {
+                        nextRow = row;
+                        return;
+                    }
+                }
+                nextRow = end;
+                return;
+            }
+            for (int row = nextRow + 1; row < end; row++) {
+                if (matches(row)) {
+                    nextRow = row;
+                    return;
+                }
+            }
+            nextRow = end;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return (sortedRows != null) ? nextRow >= 0 : nextRow < end;
+        }
+
+        @Override
+        public Song next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Song song = songAt(nextRow);
+            advance();
+            return song;
+        }
+    }
+
+    /**
+     * An open-addressing hash table from a (name id, artist id) key to the row holding that song,
+     * using linear probing over primitive arrays.
+     */
+    private static final class RowTable {
+        private static final long EMPTY = -1L;
+
+        private long[] keys;
+        private int[] rows;
+        private int count;
+
+        RowTable(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) * 2;
+            keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            rows = new int[capacity];
+        }
+
+        RowTable copy() {
+            RowTable copy = new RowTable(8);
+            copy.keys = keys.clone();
+            copy.rows = rows.clone();
+            copy.count = count;
+            return copy;
+        }
+
+        private int home(long key) {
+            long mixed = key * 0x9E3779B97F4A7C15L;
+            return (int) (mixed ^ (mixed >>> 32)) & (keys.length - 1);
+        }
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int slot = home(key); keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (keys[slot] == key)
+                    return rows[slot];
+            }
+            return -1;
+        }
+
+        boolean putIfAbsent(long key, int row) {
+            int mask = keys.length - 1;
+            int slot = home(key);
+            for (; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (keys[slot] == key)
+                    return false;
+            }
+            keys[slot] = key;
+            rows[slot] = row;
+            count++;
+            if (count * 2 > keys.length)
+                resize();
+            return true;
+        }
+
+        /**
+         * Removes a key, shifting back the entries that probed past it so that lookups stay correct.
+         */
+        int remove(long key) {
+            int mask = keys.length - 1;
+            int slot = home(key);
+            while (keys[slot] != key) {
+                if (keys[slot] == EMPTY)
+                    return -1;
+                slot = (slot + 1) & mask;
+            }
+            int row = rows[slot];
+            keys[slot] = EMPTY;
+            count--;
+            for (int next = (slot + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+                int wanted = home(keys[next]);
+                boolean stays = (slot <= next) ? (slot < wanted && wanted <= next) : (slot < wanted || wanted <= next);
+                if (!stays) {
+                    keys[slot] = keys[next];
+                    rows[slot] = rows[next];
+                    keys[next] = EMPTY;
+                    slot = next;
+                }
+            }
+            return row;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            int[] oldRows = rows;
+            keys = new long[oldKeys.length * 2];
+            Arrays.fill(keys, EMPTY);
+            rows = new int[oldKeys.length * 2];
+            count = 0;
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != EMPTY)
+                    putIfAbsent(oldKeys[slot], oldRows[slot]);
+            }
+        }
+    }
+}
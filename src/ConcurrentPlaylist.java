@@ -0,0 +1,468 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A thread-safe playlist for many readers and occasional writers.
+ * The songs are held in an immutable snapshot: an array in adding order, with an open-addressing
+ * hash table of their positions. A writer builds the next snapshot from the current one and installs
+ * it with compare-and-set, retrying if another writer got there first, so checking for a duplicate
+ * and adding the song are a single atomic step.
+ * Readers never lock: an iterator runs over the snapshot that was current when it was created, so it
+ * goes over the songs the playlist held then, in their order then, and never sees a song added or removed
+ * after that, nor a change made halfway. The songs themselves are shared rather than copied, so a
+ * change to the genre or duration of a song is seen by the iterators already running over it.
+ * Since every change copies the songs, adding or removing a song takes time linear in the size of the
+ * playlist; reading is as fast as on an unsynchronized array.
+ * It implements the Iterable, FilteredSongIterable, and OrderedSongIterable interfaces.
+ */
+public class ConcurrentPlaylist implements Iterable<Song>, FilteredSongIterable, OrderedSongIterable {
+
+    private static final Comparator<Song> NAME_ORDER = Comparator.comparing(Song::getName);
+    private static final Comparator<Song> DURATION_ORDER = Comparator.comparingInt(Song::getDuration);
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(Snapshot.EMPTY);
+    private volatile SongQuery query = SongQuery.ALL;
+
+    /**
+     * Constructs an empty ConcurrentPlaylist.
+     */
+    public ConcurrentPlaylist() {
+    }
+
+    /**
+     * Constructs a ConcurrentPlaylist holding the songs of a playlist, in adding order.
+     * The songs are gathered into a single snapshot, in linear time.
+     *
+     * @param songs the songs to add
+     * @throws SongAlreadyExistsException if the songs contain the same song more than once
+     */
+    public ConcurrentPlaylist(Iterable<Song> songs) {
+        snapshot.set(Snapshot.of(songs));
+    }
+
+    /**
+     * Adds a song to the playlist.
+     *
+     * @param song the song to add
+     * @throws SongAlreadyExistsException if the song already exists in the playlist
+     */
+    public void addSong(Song song) {
+        while (true) {
+            Snapshot current = snapshot.get();
+            if (current.indexOf(song) >= 0)
+                throw new SongAlreadyExistsException();
+            if (snapshot.compareAndSet(current, current.with(song)))
+                return;
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Removes a song from the playlist.
+     *
+     * @param song the song to remove
+     * @return true if the song was removed, false otherwise
+     */
+    public boolean removeSong(Song song) {
+        while (true) {
+            Snapshot current = snapshot.get();
+            int position = current.indexOf(song);
+            if (position < 0)
+                return false;
+            if (snapshot.compareAndSet(current, current.without(position)))
+                return true;
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Checks if the playlist holds a song.
+     *
+     * @param song the song to look for
+     * @return true if the playlist holds the song, false otherwise
+     */
+    public boolean contains(Song song) {
+        return snapshot.get().indexOf(song) >= 0;
+    }
+
+    /**
+     * Returns the number of songs in the playlist.
+     *
+     * @return the number of songs in the playlist
+     */
+    public int size() {
+        return snapshot.get().songs.length;
+    }
+
+    /**
+     * Returns a Playlist holding the songs of this one, in adding order, as they are at the time of the call.
+     *
+     * @return the new Playlist
+     */
+    public Playlist toPlaylist() {
+        return new Playlist(Arrays.asList(snapshot.get().songs));
+    }
+
+    /**
+     * Returns an iterator over the songs in the playlist, using the filters and scanning order set on it.
+     * The iterator goes over the songs the playlist held when it was created.
+     *
+     * @return an iterator over the songs in the playlist
+     */
+    @Override
+    public Iterator<Song> iterator() {
+        return iterator(query);
+    }
+
+    /**
+     * Returns an iterator over the songs in the playlist selected by a query, in the order of the query.
+     * The iterator goes over the songs the playlist held when it was created.
+     *
+     * @param query the query to run
+     * @return an iterator over the songs selected by the query
+     */
+    public Iterator<Song> iterator(SongQuery query) {
+        return snapshot.get().iterator(query);
+    }
+
+    /**
+     * Returns a sequential stream of the songs in the playlist that pass the filters, in the scanning order,
+     * like {@link Playlist#stream()}. The stream goes over the songs the playlist held when it was created.
+     *
+     * @return a stream of the songs in the playlist
+     */
+    public Stream<Song> stream() {
+        return stream(query);
+    }
+
+    /**
+     * Returns a sequential stream of the songs in the playlist selected by a query, in the order of the query.
+     * The stream goes over the songs the playlist held when it was created.
+     *
+     * @param query the query to run
+     * @return a stream of the songs selected by the query
+     */
+    public Stream<Song> stream(SongQuery query) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator(query),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL | Spliterator.IMMUTABLE), false);
+    }
+
+    /**
+     * Filters the songs in the playlist by artist, for the scans that use the filters set on it.
+     *
+     * @param artist the artist to filter by
+     */
+    @Override
+    public void filterArtist(String artist) {
+        this.query = query.withArtist(artist);
+    }
+
+    /**
+     * Filters the songs in the playlist by genre, for the scans that use the filters set on it.
+     *
+     * @param genre the genre to filter by
+     */
+    @Override
+    public void filterGenre(Song.Genre genre) {
+        this.query = query.withGenre(genre);
+    }
+
+    /**
+     * Filters the songs in the playlist by duration, for the scans that use the filters set on it.
+     *
+     * @param maxDuration the maximum duration to filter by
+     */
+    @Override
+    public void filterDuration(int maxDuration) {
+        this.query = query.withMaxDuration(maxDuration);
+    }
+
+    /**
+     * Sets the scanning order of the scans that use the filters and scanning order set on the playlist.
+     *
+     * @param order the scanning order to set
+     */
+    @Override
+    public void setScanningOrder(ScanningOrder order) {
+        this.query = query.withOrder(order);
+    }
+
+    /**
+     * Sets the seed of the shuffled scanning order. Scans in that order visit the songs in the same
+     * order for the same seed, and in another one for another seed.
+     *
+     * @param seed the seed of the shuffled order
+     */
+    public void setShuffleSeed(long seed) {
+        this.query = query.withSeed(seed);
+    }
+
+    /**
+     * Returns the query made of the filters and scanning order currently set on the playlist,
+     * which is what iterator() runs.
+     *
+     * @return the current query of the playlist
+     */
+    public SongQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * Returns a string representation of the playlist, in the format of {@link Playlist#toString()}.
+     *
+     * @return a string representation of the playlist
+     */
+    @Override
+    public String toString() {
+        return toPlaylist().toString();
+    }
+
+    /**
+     * The Snapshot class is an immutable state of the playlist: its songs in adding order, and a table
+     * of their positions hashed by song. The songs sorted by name or duration are computed the first
+     * time they are needed and kept; publishing them from several readers at once is harmless, since
+     * they are all the same.
+     */
+    private static final class Snapshot {
+
+        private static final int FREE = -1;
+        private static final Snapshot EMPTY = new Snapshot(new Song[0], newTable(4));
+
+        private final Song[] songs;
+        private final int[] table;
+        private volatile Song[] byName;
+        private volatile SortedByDuration byDuration;
+
+        private Snapshot(Song[] songs, int[] table) {
+            this.songs = songs;
+            this.table = table;
+        }
+
+        /**
+         * Returns a snapshot of the given songs, in the order they are given.
+         *
+         * @throws SongAlreadyExistsException if the songs contain the same song more than once
+         */
+        static Snapshot of(Iterable<Song> added) {
+            List<Song> list = new ArrayList<>();
+            for (Song song : added)
+                list.add(song);
+            Song[] songs = list.toArray(new Song[0]);
+            int capacity = 4;
+            while (capacity < 2 * songs.length)
+                capacity *= 2;
+            Snapshot snapshot = new Snapshot(songs, newTable(capacity));
+            for (int position = 0; position < songs.length; position++) {
+                if (snapshot.indexOf(songs[position]) >= 0)
+                    throw new SongAlreadyExistsException();
+                insert(snapshot.table, songs[position], position);
+            }
+            return snapshot;
+        }
+
+        /**
+         * Returns the position of a song, or -1 if the snapshot does not hold it.
+         */
+        int indexOf(Song song) {
+            int mask = table.length - 1;
+            int slot = mix(song.hashCode()) & mask;
+            while (table[slot] != FREE) {
+                if (songs[table[slot]].equals(song))
+                    return table[slot];
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        /**
+         * Returns the next snapshot, with a song added at the end.
+         */
+        Snapshot with(Song song) {
+            Song[] added = Arrays.copyOf(songs, songs.length + 1);
+            added[songs.length] = song;
+            if (added.length * 2 > table.length)
+                return new Snapshot(added, hash(added, table.length * 2));
+            int[] copy = table.clone();
+            insert(copy, song, songs.length);
+            return new Snapshot(added, copy);
+        }
+
+        /**
+         * Returns the next snapshot, without the song at a position.
+         */
+        Snapshot without(int position) {
+            Song[] removed = new Song[songs.length - 1];
+            System.arraycopy(songs, 0, removed, 0, position);
+            System.arraycopy(songs, position + 1, removed, position, removed.length - position);
+            int capacity = table.length;
+            while (capacity > 4 && removed.length * 8 < capacity)
+                capacity /= 2;
+            return new Snapshot(removed, hash(removed, capacity));
+        }
+
+        /**
+         * Returns an iterator running a query over the songs in the order of the query; songs with
+         * the same key keep their adding order. The songs sorted by duration are sorted again if the
+         * duration of a song changed since they were sorted.
+         * The shuffled order is computed by the iterator, over the songs in adding order.
+         */
+        SnapshotIterator iterator(SongQuery query) {
+            switch (query.getOrder()) {
+                case NAME:
+                    Song[] sortedByName = byName;
+                    if (sortedByName == null) {
+                        sortedByName = sorted(NAME_ORDER);
+                        byName = sortedByName;
+                    }
+                    return new SnapshotIterator(sortedByName, query, 0);
+                case DURATION:
+                    int modificationCount = Song.getModificationCount();
+                    SortedByDuration sortedByDuration = byDuration;
+                    if (sortedByDuration == null || sortedByDuration.modificationCount != modificationCount) {
+                        sortedByDuration = new SortedByDuration(sorted(DURATION_ORDER), modificationCount);
+                        byDuration = sortedByDuration;
+                    }
+                    return new SnapshotIterator(sortedByDuration.songs, query, sortedByDuration.modificationCount);
+                case SHUFFLE:
+                case ADDING:
+                default:
+                    return new SnapshotIterator(songs, query, 0);
+            }
+        }
+
+        private Song[] sorted(Comparator<Song> order) {
+            Song[] sorted = songs.clone();
+            Arrays.sort(sorted, order);
+            return sorted;
+        }
+
+        private static int[] hash(Song[] songs, int capacity) {
+            int[] table = newTable(capacity);
+            for (int position = 0; position < songs.length; position++)
+                insert(table, songs[position], position);
+            return table;
+        }
+
+        private static void insert(int[] table, Song song, int position) {
+            int mask = table.length - 1;
+            int slot = mix(song.hashCode()) & mask;
+            while (table[slot] != FREE)
+                slot = (slot + 1) & mask;
+            table[slot] = position;
+        }
+
+        private static int[] newTable(int capacity) {
+            int[] table = new int[capacity];
+            Arrays.fill(table, FREE);
+            return table;
+        }
+
+        private static int mix(int hash) {
+            int mixed = hash * 0x9E3779B9;
+            return mixed ^ (mixed >>> 16);
+        }
+    }
+
+    /**
+     * The songs of a snapshot sorted by duration, with the modification count of the songs
+     * (see {@link Song#getModificationCount()}) read before they were sorted.
+     */
+    private static final class SortedByDuration {
+
+        private final Song[] songs;
+        private final int modificationCount;
+
+        SortedByDuration(Song[] songs, int modificationCount) {
+            this.songs = songs;
+            this.modificationCount = modificationCount;
+        }
+    }
+
+    /**
+     * The SnapshotIterator class represents an iterator over the songs of a snapshot selected by a query.
+     * In the shuffled order, the songs are visited in the order of a {@link ShufflePermutation} of the snapshot.
+     */
+    private static class SnapshotIterator implements Iterator<Song> {
+
+        private final Song[] songs;
+        private final SongQuery query;
+        private final ShufflePermutation permutation;
+        private final int sortedAt;
+        private boolean sortedByDuration;
+        private int i;
+        private int toSkip;
+        private int remaining;
+        private Song nextSong;
+
+        /**
+         * Constructs a SnapshotIterator running a query over songs already in the order of the query.
+         *
+         * @param songs    the songs of the snapshot, in the order of the query
+         * @param query    the query to run
+         * @param sortedAt for songs sorted by duration, the modification count of the songs they were sorted at
+         */
+        SnapshotIterator(Song[] songs, SongQuery query, int sortedAt) {
+            this.songs = songs;
+            this.query = query;
+            this.permutation = (query.getOrder() == ScanningOrder.SHUFFLE)
+                    ? new ShufflePermutation(songs.length, query.getSeed()) : null;
+            this.sortedByDuration = query.getOrder() == ScanningOrder.DURATION;
+            this.sortedAt = sortedAt;
+            this.toSkip = query.getOffset();
+            this.remaining = query.getLimit();
+            advance();
+        }
+
+        /**
+         * Moves to the next song selected by the query, or to null if there is none
+         * or the limit of the query was reached.
+         * Songs sorted by duration are only known to still be sorted if no song changed since, so the scan
+         * stops at the first song that is too long only then, and otherwise goes on to the end.
+         */
+        private void advance() {
+            nextSong = null;
+            if (remaining == 0)
+                return;
+            while (i < songs.length) {
+                Song song = (permutation == null) ? songs[i++] : songs[permutation.get(i++)];
+                if (sortedByDuration && song.getDuration() > query.getMaxDuration()) {
+                    if (Song.getModificationCount() == sortedAt)
+                        return;
+                    sortedByDuration = false;
+                }
+                if (query.matches(song)) {
+                    if (toSkip > 0) {
+                        toSkip--;
+                        continue;
+                    }
+                    nextSong = song;
+                    remaining--;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextSong != null;
+        }
+
+        @Override
+        public Song next() {
+            if (nextSong == null)
+                throw new NoSuchElementException();
+            Song song = nextSong;
+            advance();
+            return song;
+        }
+    }
+}
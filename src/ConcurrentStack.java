@@ -0,0 +1,248 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.UnaryOperator;
+
+/**
+ * A thread-safe, lock-free implementation of the Stack interface (a Treiber stack).
+ * The stack is a linked list of immutable nodes whose head is replaced with compare-and-set,
+ * and each node records the size of the stack below and including it, so that the capacity
+ * is checked by the same compare-and-set that pushes.
+ * An unbounded stack also lets a push and a pop that collide on the head cancel each other out
+ * through an elimination array, so contended pairs do not have to go through the head at all.
+ *
+ * @param <E> the type of elements in the stack
+ */
+public class ConcurrentStack<E extends Cloneable> implements Stack<E> {
+    private static final int MAX_ELIMINATION_SLOTS = 16;
+    private static final int ELIMINATION_SPINS = 64;
+
+    private final AtomicReference<Node<E>> head = new AtomicReference<>();
+    private final AtomicReferenceArray<Node<E>> eliminationSlots;
+    private final int maxCapacity;
+    private final UnaryOperator<E> copier;
+
+    /**
+     * Constructs a new ConcurrentStack with no limit on its size.
+     */
+    public ConcurrentStack() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a new ConcurrentStack that holds at most the specified number of elements.
+     * Its elements are copied by their public clone method when the stack is cloned.
+     *
+     * @param maxCapacity the maximum capacity of the stack
+     * @throws NegativeCapacityException if the specified maximum capacity is negative
+     */
+    public ConcurrentStack(int maxCapacity) throws NegativeCapacityException {
+        this(maxCapacity, ArrayStack::cloneElement);
+    }
+
+    /**
+     * Constructs a new ConcurrentStack that holds at most the specified number of elements,
+     * whose elements are copied by the given copier when the stack is cloned.
+     *
+     * @param maxCapacity the maximum capacity of the stack
+     * @param copier      the function returning a copy of an element
+     * @throws NegativeCapacityException if the specified maximum capacity is negative
+     */
+    public ConcurrentStack(int maxCapacity, UnaryOperator<E> copier) throws NegativeCapacityException {
+        if (maxCapacity < 0) {
+            throw new NegativeCapacityException();
+        }
+        this.maxCapacity = maxCapacity;
+        this.copier = copier;
+        // A push eliminated by a pop is ordered just before it, which is only valid if the push could not overflow.
+        if (maxCapacity == Integer.MAX_VALUE) {
+            int slots = Math.min(Runtime.getRuntime().availableProcessors(), MAX_ELIMINATION_SLOTS);
+            eliminationSlots = new AtomicReferenceArray<>(slots);
+        } else {
+            eliminationSlots = null;
+        }
+    }
+
+    /**
+     * Pushes an element onto the top of the stack.
+     *
+     * @param element the element to be pushed onto the stack
+     * @throws StackOverflowException if the stack already holds its maximum capacity of elements
+     */
+    @Override
+    public void push(E element) {
+        while (true) {
+            Node<E> top = head.get();
+            int size = (top == null) ? 0 : top.size;
+            if (size == maxCapacity) {
+                throw new StackOverflowException();
+            }
+            Node<E> node = new Node<>(element, top, size + 1);
+            if (head.compareAndSet(top, node)) {
+                return;
+            }
+            if (eliminationSlots != null && eliminatePush(node)) {
+                return;
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Removes and returns the element at the top of the stack.
+     *
+     * @return the element at the top of the stack
+     * @throws EmptyStackException if the stack is empty
+     */
+    @Override
+    public E pop() {
+        while (true) {
+            Node<E> top = head.get();
+            if (top == null) {
+                throw new EmptyStackException();
+            }
+            if (head.compareAndSet(top, top.next)) {
+                return top.element;
+            }
+            if (eliminationSlots != null) {
+                Node<E> offer = eliminatePop();
+                if (offer != null) {
+                    return offer.element;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    @Override
+    public E peek() {
+        Node<E> top = head.get();
+        if (top == null) {
+            throw new EmptyStackException();
+        }
+        return top.element;
+    }
+
+    @Override
+    public int size() {
+        Node<E> top = head.get();
+        return (top == null) ? 0 : top.size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return head.get() == null;
+    }
+
+    /**
+     * Creates and returns a clone of the stack as it was when the method was called,
+     * holding copies of its elements made by the stack's copier.
+     *
+     * @return a clone of the stack
+     * @throws StackCloneException if an element cannot be copied
+     */
+    @Override
+    public ConcurrentStack<E> clone() {
+        ConcurrentStack<E> copyStack = new ConcurrentStack<>(maxCapacity, copier);
+        List<E> elements = new ArrayList<>(size());
+        for (E element : this) {
+            elements.add(copier.apply(element));
+        }
+        Node<E> copyHead = null;
+        for (int i = elements.size() - 1; i >= 0; i--) {
+            copyHead = new Node<>(elements.get(i), copyHead, elements.size() - i);
+        }
+        copyStack.head.set(copyHead);
+        return copyStack;
+    }
+
+    /**
+     * Returns an iterator over the elements of the stack from top to bottom, as they were when
+     * the method was called. Later pushes and pops are not reflected in the iteration.
+     *
+     * @return an iterator over the elements of the stack
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new StackIterator(head.get());
+    }
+
+    /**
+     * Offers a pushed node in a random elimination slot for a short while, for a concurrent pop to take.
+     *
+     * @param node the node holding the pushed element
+     * @return true if a pop took the element, false if the push still has to go through the head
+     */
+    private boolean eliminatePush(Node<E> node) {
+        int slot = ThreadLocalRandom.current().nextInt(eliminationSlots.length());
+        if (!eliminationSlots.compareAndSet(slot, null, node)) {
+            return false;
+        }
+        for (int i = 0; i < ELIMINATION_SPINS; i++) {
+            if (eliminationSlots.get(slot) != node) {
+                return true;
+            }
+            Thread.onSpinWait();
+        }
+        return !eliminationSlots.compareAndSet(slot, node, null);
+    }
+
+    /**
+     * Takes a node offered by a concurrent push from a random elimination slot, if there is one.
+     *
+     * @return the node of the eliminated push, or null if there was none
+     */
+    private Node<E> eliminatePop() {
+        int slot = ThreadLocalRandom.current().nextInt(eliminationSlots.length());
+        Node<E> offer = eliminationSlots.get(slot);
+        if (offer != null && eliminationSlots.compareAndSet(slot, offer, null)) {
+            return offer;
+        }
+        return null;
+    }
+
+    /**
+     * An immutable node of the stack.
+     */
+    private static final class Node<E> {
+        private final E element;
+        private final Node<E> next;
+        private final int size;
+
+        private Node(E element, Node<E> next, int size) {
+            this.element = element;
+            this.next = next;
+            this.size = size;
+        }
+    }
+
+    /**
+     * An iterator implementation for ConcurrentStack, walking the nodes from a given head.
+     */
+    private class StackIterator implements Iterator<E> {
+        private Node<E> current;
+
+        private StackIterator(Node<E> head) {
+            this.current = head;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return current != null;
+        }
+
+        @Override
+        public E next() {
+            if (current == null) {
+                throw new NoSuchElementException();
+            }
+            E nextElement = current.element;
+            current = current.next;
+            return nextElement;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The ImportReport class describes the outcome of importing a song file into a playlist:
+ * how many songs were added, which lines held songs the playlist already had, and which lines
+ * could not be read as songs.
+ */
+public class ImportReport {
+
+    private final int addedCount;
+    private final List<Integer> duplicateLines;
+    private final List<String> errors;
+
+    /**
+     * Constructs an ImportReport.
+     *
+     * @param addedCount     the number of songs added
+     * @param duplicateLines the numbers of the lines holding songs that were skipped as duplicates
+     * @param errors         a message for each line that could not be read, starting with its number
+     */
+    ImportReport(int addedCount, List<Integer> duplicateLines, List<String> errors) {
+        this.addedCount = addedCount;
+        this.duplicateLines = Collections.unmodifiableList(duplicateLines);
+        this.errors = Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * Returns the number of songs added to the playlist.
+     *
+     * @return the number of songs added
+     */
+    public int getAddedCount() {
+        return addedCount;
+    }
+
+    /**
+     * Returns the numbers of the lines, starting from 1, holding a song that was already in the playlist
+     * or on an earlier line.
+     *
+     * @return the numbers of the duplicate lines, in ascending order
+     */
+    public List<Integer> getDuplicateLines() {
+        return duplicateLines;
+    }
+
+    /**
+     * Returns a message for each line that could not be read as a song, such as
+     * "line 12: duration not in mm:ss format: 3:7".
+     *
+     * @return the errors, in line order
+     */
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Returns a string representation of the report.
+     *
+     * @return a string representation of the report
+     */
+    @Override
+    public String toString() {
+        return addedCount + " added, " + duplicateLines.size() + " duplicates, " + errors.size() + " errors";
+    }
+}
@@ -0,0 +1,134 @@
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * A stack of int values backed by an int array, mirroring the operations of the Stack interface
+ * without boxing: pushing and popping do not allocate.
+ */
+public class IntStack implements Iterable<Integer>, Cloneable {
+    private int[] arr;
+    private int maxCapacity;
+    private int top;
+
+    /**
+     * Constructs a new IntStack with the specified maximum capacity.
+     *
+     * @param maxCapacity the maximum capacity of the stack
+     * @throws NegativeCapacityException if the specified maximum capacity is negative
+     */
+    public IntStack(int maxCapacity) throws NegativeCapacityException {
+        if (maxCapacity < 0) {
+            throw new NegativeCapacityException();
+        }
+        this.maxCapacity = maxCapacity;
+        arr = new int[maxCapacity];
+        top = -1;
+    }
+
+    /**
+     * Pushes a value onto the top of the stack.
+     *
+     * @param value the value to be pushed onto the stack
+     * @throws StackOverflowException if the stack is full
+     */
+    public void push(int value) {
+        if (top + 1 == maxCapacity) {
+            throw new StackOverflowException();
+        }
+        top++;
+        arr[top] = value;
+    }
+
+    /**
+     * Removes and returns the value at the top of the stack.
+     *
+     * @return the value at the top of the stack
+     * @throws EmptyStackException if the stack is empty
+     */
+    public int pop() {
+        if (top == -1) {
+            throw new EmptyStackException();
+        }
+        return arr[top--];
+    }
+
+    /**
+     * Returns the value at the top of the stack without removing it.
+     *
+     * @return the value at the top of the stack
+     * @throws EmptyStackException if the stack is empty
+     */
+    public int peek() {
+        if (top == -1) {
+            throw new EmptyStackException();
+        }
+        return arr[top];
+    }
+
+    /**
+     * Returns the number of values in the stack.
+     *
+     * @return the number of values in the stack
+     */
+    public int size() {
+        return top + 1;
+    }
+
+    /**
+     * Checks if the stack is empty.
+     *
+     * @return true if the stack is empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return (top == -1);
+    }
+
+    /**
+     * Creates and returns a clone of the stack.
+     *
+     * @return a clone of the stack
+     */
+    @Override
+    public IntStack clone() {
+        IntStack copyStack;
+        try {
+            copyStack = (IntStack) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new StackCloneException(e);
+        }
+        copyStack.arr = arr.clone();
+        return copyStack;
+    }
+
+    /**
+     * Returns an iterator over the values of the stack, from top to bottom.
+     *
+     * @return a primitive iterator over the values of the stack
+     */
+    @Override
+    public PrimitiveIterator.OfInt iterator() {
+        return new StackIterator();
+    }
+
+    /**
+     * A primitive iterator implementation for IntStack.
+     */
+    private class StackIterator implements PrimitiveIterator.OfInt {
+        private int i = size() - 1;
+
+        @Override
+        public boolean hasNext() {
+            return i >= 0;
+        }
+
+        @Override
+        public int nextInt() {
+            if (i < 0) {
+                throw new NoSuchElementException();
+            }
+            int nextValue = arr[i];
+            i--;
+            return nextValue;
+        }
+    }
+}
@@ -0,0 +1,360 @@
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * The MappedPlaylist class is a read-only view of a playlist file mapped into memory by
+ * {@link PlaylistFile#map(java.nio.file.Path)}.
+ * Nothing is decoded when the file is mapped, only checked: the filters are evaluated on the mapped
+ * columns directly, and a Song is only created, with its name decoded from the file, when the scan reaches it.
+ * The songs are new objects holding the stored values; changing them does not change the file.
+ * It implements the Iterable, FilteredSongIterable, and OrderedSongIterable interfaces.
+ */
+public class MappedPlaylist implements Iterable<Song>, FilteredSongIterable, OrderedSongIterable {
+
+    private static final Song.Genre[] GENRES = Song.Genre.values();
+
+    private final int size;
+    private final StringTable names;
+    private final StringTable artists;
+    private final IntBuffer nameIds;
+    private final IntBuffer artistIds;
+    private final IntBuffer durations;
+    private final ByteBuffer genres;
+    private final IntBuffer byName;
+    private final IntBuffer byDuration;
+    private final String[] decodedArtists;
+
+    private SongQuery query = SongQuery.ALL;
+
+    /**
+     * Constructs a MappedPlaylist over a buffer holding a playlist file that was checked.
+     *
+     * @param file the mapped file
+     */
+    MappedPlaylist(ByteBuffer file) {
+        this.size = file.getInt(12);
+        this.names = new StringTable(file, (int) file.getLong(24), file.getInt(16));
+        this.artists = new StringTable(file, (int) file.getLong(32), file.getInt(20));
+        int columns = (int) file.getLong(40);
+        this.nameIds = file.slice(columns, 4 * size).asIntBuffer();
+        this.artistIds = file.slice(columns + 4 * size, 4 * size).asIntBuffer();
+        this.durations = file.slice(columns + 8 * size, 4 * size).asIntBuffer();
+        this.genres = file.slice(columns + 12 * size, size);
+        if ((file.getInt(8) & PlaylistFile.HAS_INDEX) != 0) {
+            int index = (int) file.getLong(48);
+            this.byName = file.slice(index, 4 * size).asIntBuffer();
+            this.byDuration = file.slice(index + 4 * size, 4 * size).asIntBuffer();
+        } else {
+            this.byName = null;
+            this.byDuration = null;
+        }
+        this.decodedArtists = new String[artists.size()];
+    }
+
+    /**
+     * Returns the number of songs in the playlist.
+     *
+     * @return the number of songs in the playlist
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the song at the given position in adding order.
+     *
+     * @param index the position of the song
+     * @return a new Song holding the stored values
+     * @throws IndexOutOfBoundsException if there is no such position
+     */
+    public Song get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException(index);
+        byte genre = genres.get(index);
+        return new Song(names.get(nameIds.get(index)), artist(artistIds.get(index)),
+                (genre < 0) ? null : GENRES[genre], durations.get(index));
+    }
+
+    /**
+     * Creates a Playlist holding the songs of this one, in adding order.
+     *
+     * @return the new Playlist
+     */
+    public Playlist toPlaylist() {
+        Playlist playlist = new Playlist();
+        for (int row = 0; row < size; row++)
+            playlist.addSong(get(row));
+        return playlist;
+    }
+
+    /**
+     * Returns an iterator over the songs in the playlist, using the filters and scanning order set on it.
+     *
+     * @return an iterator over the songs in the playlist
+     */
+    @Override
+    public Iterator<Song> iterator() {
+        return iterator(query);
+    }
+
+    /**
+     * Returns an iterator over the songs in the playlist selected by a query, in the order of the query.
+     *
+     * @param query the query to run
+     * @return an iterator over the songs selected by the query
+     */
+    public Iterator<Song> iterator(SongQuery query) {
+        return new MappedIterator(query);
+    }
+
+    /**
+     * Filters the songs in the playlist by artist, for the scans that use the filters set on it.
+     *
+     * @param artist the artist to filter by
+     */
+    @Override
+    public void filterArtist(String artist) {
+        this.query = query.withArtist(artist);
+    }
+
+    /**
+     * Filters the songs in the playlist by genre, for the scans that use the filters set on it.
+     *
+     * @param genre the genre to filter by
+     */
+    @Override
+    public void filterGenre(Song.Genre genre) {
+        this.query = query.withGenre(genre);
+    }
+
+    /**
+     * Filters the songs in the playlist by duration, for the scans that use the filters set on it.
+     *
+     * @param maxDuration the maximum duration to filter by
+     */
+    @Override
+    public void filterDuration(int maxDuration) {
+        this.query = query.withMaxDuration(maxDuration);
+    }
+
+    /**
+     * Sets the scanning order of the scans that use the filters and scanning order set on the playlist.
+     *
+     * @param order the scanning order to set
+     */
+    @Override
+    public void setScanningOrder(ScanningOrder order) {
+        this.query = query.withOrder(order);
+    }
+
+    /**
+     * Sets the seed of the shuffled scanning order. Scans in that order visit the songs in the same
+     * order for the same seed, and in another one for another seed.
+     *
+     * @param seed the seed of the shuffled order
+     */
+    public void setShuffleSeed(long seed) {
+        this.query = query.withSeed(seed);
+    }
+
+    /**
+     * Returns the current scanning order of the playlist.
+     *
+     * @return the scanning order of the playlist
+     */
+    public ScanningOrder getOrder() {
+        return query.getOrder();
+    }
+
+    /**
+     * Returns the query made of the filters and scanning order currently set on the playlist,
+     * which is what iterator() runs.
+     *
+     * @return the current query of the playlist
+     */
+    public SongQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * Returns an artist, decoding it from the file the first time it is needed.
+     */
+    private String artist(int id) {
+        String artist = decodedArtists[id];
+        if (artist == null) {
+            artist = artists.get(id);
+            decodedArtists[id] = artist;
+        }
+        return artist;
+    }
+
+    /**
+     * Returns the rows in the given order when the file has no index section for it,
+     * sorting them the way the index would.
+     */
+    private IntBuffer sortedRows(ScanningOrder order) {
+        if (order == ScanningOrder.DURATION) {
+            long[] keys = new long[size];
+            for (int row = 0; row < size; row++)
+                keys[row] = ((long) durations.get(row) << 32) | row;
+            Arrays.sort(keys);
+            int[] rows = new int[size];
+            for (int i = 0; i < size; i++)
+                rows[i] = (int) keys[i];
+            return IntBuffer.wrap(rows);
+        }
+        String[] rowNames = new String[names.size()];
+        for (int id = 0; id < rowNames.length; id++)
+            rowNames[id] = names.get(id);
+        Integer[] rows = new Integer[size];
+        for (int row = 0; row < size; row++)
+            rows[row] = row;
+        Arrays.sort(rows, (first, second) -> rowNames[nameIds.get(first)].compareTo(rowNames[nameIds.get(second)]));
+        return IntBuffer.wrap(Arrays.stream(rows).mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * The StringTable class reads the strings of a string table section of the file.
+     * The ids of the strings are looked up in a map built the first time one is needed.
+     */
+    private static class StringTable {
+
+        private final IntBuffer ends;
+        private final ByteBuffer bytes;
+        private volatile Map<String, Integer> ids;
+
+        StringTable(ByteBuffer file, int offset, int count) {
+            this.ends = file.slice(offset, 4 * count).asIntBuffer();
+            this.bytes = file.slice(offset + 4 * count, (count == 0) ? 0 : ends.get(count - 1));
+        }
+
+        int size() {
+            return ends.limit();
+        }
+
+        String get(int id) {
+            int start = (id == 0) ? 0 : ends.get(id - 1);
+            byte[] string = new byte[ends.get(id) - start];
+            bytes.get(start, string);
+            return new String(string, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Returns the id of a string. The first call decodes every string of the table into a map from
+         * string to id; concurrent first calls may each build it, which is harmless.
+         *
+         * @return the id of the string, or -1 if the table does not hold it
+         */
+        int idOf(String string) {
+            Map<String, Integer> ids = this.ids;
+            if (ids == null) {
+                ids = new HashMap<>(2 * size());
+                for (int id = 0; id < size(); id++)
+                    ids.putIfAbsent(get(id), id);
+                this.ids = ids;
+            }
+            return ids.getOrDefault(string, -1);
+        }
+    }
+
+    /**
+     * The MappedIterator class represents an iterator over the songs of the playlist selected by a query.
+     * The filters are checked against the mapped columns, and only the songs that pass them are created.
+     */
+    private class MappedIterator implements Iterator<Song> {
+
+        private final int artistId;
+        private final int genre;
+        private final int maxDuration;
+        private final IntBuffer rows;
+        private final ShufflePermutation permutation;
+        private final boolean sortedByDuration;
+        private int i;
+        private int toSkip;
+        private int remaining;
+        private int nextRow;
+
+        /**
+         * Constructs a MappedIterator running the given query over the mapped file.
+         *
+         * @param query the query to run
+         */
+        public MappedIterator(SongQuery query) {
+            this.artistId = (query.getArtist() == null) ? -1 : artists.idOf(query.getArtist());
+            this.genre = (query.getGenre() == null) ? -1 : query.getGenre().ordinal();
+            this.maxDuration = query.getMaxDuration();
+            this.sortedByDuration = query.getOrder() == ScanningOrder.DURATION;
+            this.toSkip = query.getOffset();
+            this.remaining = query.getLimit();
+            this.permutation = (query.getOrder() == ScanningOrder.SHUFFLE)
+                    ? new ShufflePermutation(size, query.getSeed()) : null;
+            switch (query.getOrder()) {
+                case NAME:
+                    this.rows = (byName != null) ? byName.duplicate() : sortedRows(ScanningOrder.NAME);
+                    break;
+                case DURATION:
+                    this.rows = (byDuration != null) ? byDuration.duplicate() : sortedRows(ScanningOrder.DURATION);
+                    break;
+                case SHUFFLE:
+                case ADDING:
+                default:
+                    this.rows = null;
+                    break;
+            }
+            if (query.getArtist() != null && artistId < 0)
+                this.remaining = 0;
+            advance();
+        }
+
+        private boolean matches(int row) {
+            return (artistId < 0 || artistIds.get(row) == artistId) &&
+                    (genre < 0 || genres.get(row) == genre) &&
+                    durations.get(row) <= maxDuration;
+        }
+
+        /**
+         * Moves to the next row that passes the filters, past the rows the query skips,
+         * or to -1 if there is none or the limit of the query was reached.
+         */
+        private void advance() {
+            nextRow = -1;
+            if (remaining == 0)
+                return;
+            while (i < size) {
+                int row = (permutation != null) ? permutation.get(i) : (rows == null) ? i : rows.get(i);
+                i++;
+                if (sortedByDuration && durations.get(row) > maxDuration)
+                    return;
+                if (matches(row)) {
+                    if (toSkip > 0) {
+                        toSkip--;
+                        continue;
+                    }
+                    nextRow = row;
+                    remaining--;
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextRow >= 0;
+        }
+
+        @Override
+        public Song next() {
+            if (nextRow < 0)
+                throw new NoSuchElementException();
+            Song song = get(nextRow);
+            advance();
+            return song;
+        }
+    }
+}
@@ -1,7 +1,16 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The Playlist class represents a collection of songs that can be iterated over, filtered, and ordered.
@@ -9,26 +18,42 @@ import java.util.List;
  */
 public class Playlist implements Cloneable, Iterable<Song>, FilteredSongIterable, OrderedSongIterable {
 
-    private List<Song> songs;
-    private ScanningOrder order = ScanningOrder.ADDING;
-    private String filterArtist = null;
-    private Song.Genre filterGenre = null;
-    private int filterDuration = Integer.MAX_VALUE;
+    private volatile SongStore store;
+    private SongPool pool;
+    private QueryCache cache;
+    private SongQuery query = SongQuery.ALL;
 
     /**
      * Constructs an empty Playlist.
      */
     public Playlist() {
-        this.songs = new ArrayList<>();
+        this.store = new SongStore(this);
+    }
+
+    /**
+     * Constructs an empty Playlist that holds the canonical songs of a pool.
+     * Songs added to it are replaced by the equal song of the pool, registering them if needed,
+     * so playlists built on the same pool share their songs and artist strings.
+     * As songs are equal by name and artist, a song the pool already holds keeps the genre and duration
+     * it has in the pool, whatever those of the song added.
+     *
+     * @param pool the pool of canonical songs
+     */
+    public Playlist(SongPool pool) {
+        this();
+        this.pool = pool;
     }
 
     /**
      * Constructs a Playlist with the given list of songs.
      *
      * @param songs the list of songs
+     * @throws SongAlreadyExistsException if the list contains the same song more than once
      */
     public Playlist(List<Song> songs) {
-        this.songs = songs;
+        this();
+        for (Song song : songs)
+            addSong(song);
     }
 
     /**
@@ -38,29 +63,110 @@ public class Playlist implements Cloneable, Iterable<Song>, FilteredSongIterable
      */
     @Override
     public String toString() {
-        if (songs.isEmpty()) {
-            return "[]";
+        StringBuilder playlistString = new StringBuilder();
+        try {
+            appendTo(playlistString);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        StringBuilder playlistString = new StringBuilder("[");
-
-        for (int i = 0; i < songs.size() - 1; i++)
-            playlistString.append("(").append(songs.get(i).toString()).append("), ");
+        return playlistString.toString();
+    }
 
-        playlistString.append("(").append(songs.get(songs.size() - 1).toString()).append(")]");
+    /**
+     * Appends the string representation of the Playlist, as returned by {@link #toString()}, to the
+     * given destination. Each song is appended directly as it is reached, so apart from the destination
+     * itself this takes constant memory, however many songs the Playlist holds.
+     *
+     * @param out the destination
+     * @param <A> the type of the destination
+     * @return the destination
+     * @throws IOException if appending fails
+     */
+    public <A extends Appendable> A appendTo(A out) throws IOException {
+        out.append('[');
+        boolean first = true;
+        for (Song song : readableStore()) {
+            if (!first)
+                out.append(", ");
+            out.append('(');
+            song.appendTo(out).append(')');
+            first = false;
+        }
+        out.append(']');
+        return out;
+    }
 
-        return playlistString.toString();
+    /**
+     * Writes the string representation of the Playlist, as returned by {@link #toString()}, to a writer
+     * and flushes it. The writer is not closed; for a file, a buffered writer should be given.
+     *
+     * @param writer the writer to write to
+     * @throws IOException if writing fails
+     */
+    public void writeTo(Writer writer) throws IOException {
+        appendTo(writer);
+        writer.flush();
     }
 
     /**
      * Adds a song to the Playlist.
+     * If the Playlist was built on a pool, the canonical song of the pool is added instead, with its
+     * own genre and duration when the pool already held one with the same name and artist.
      *
      * @param song the song to add
      * @throws SongAlreadyExistsException if the song already exists in the Playlist
      */
     public void addSong(Song song) {
-        if (songs.contains(song))
+        if (pool != null)
+            song = pool.canonical(song);
+        if (store.contains(song))
             throw new SongAlreadyExistsException();
-        songs.add(song);
+        store = store.forWriting(this);
+        store.add(song);
+        if (cache != null)
+            cache.songChanged(song);
+    }
+
+    /**
+     * Adds songs to the Playlist, in the order they are given, skipping the songs that are already
+     * in the Playlist or given before instead of failing on them.
+     * This is faster than adding the songs one by one: they are checked against the Playlist in a single
+     * pass, and for a large batch the indexes are built once, when they are next needed.
+     * If the Playlist was built on a pool, the canonical songs of the pool are added instead, with their
+     * own genre and duration when the pool already held songs with the same names and artists, and the
+     * skipped songs are reported as their canonical songs.
+     *
+     * @param songs the songs to add
+     * @return the songs that were skipped, in the order they were given
+     */
+    public List<Song> addAll(Iterable<Song> songs) {
+        List<Song> duplicates = new ArrayList<>();
+        addAll(songs, duplicates::add);
+        return duplicates;
+    }
+
+    /**
+     * Adds songs to the Playlist like {@link #addAll(Iterable)}, handing each skipped song to the given
+     * consumer as soon as it is found, before the next song is taken from the iterable.
+     * If the Playlist was built on a pool, the consumer is given the canonical songs.
+     * If the iterable fails partway, the songs taken from it before stay in the Playlist.
+     *
+     * @param songs       the songs to add
+     * @param onDuplicate the consumer of the skipped songs
+     * @return the number of songs added
+     */
+    public int addAll(Iterable<Song> songs, Consumer<Song> onDuplicate) {
+        Iterable<Song> added = songs;
+        if (pool != null)
+            added = () -> StreamSupport.stream(songs.spliterator(), false).map(pool::canonical).iterator();
+        store = store.forWriting(this);
+        int sizeBefore = store.size();
+        try {
+            return store.addAll(added, onDuplicate);
+        } finally {
+            if (cache != null && store.size() != sizeBefore)
+                cache.clear();
+        }
     }
 
     /**
@@ -70,11 +176,134 @@ public class Playlist implements Cloneable, Iterable<Song>, FilteredSongIterable
      * @return true if the song was removed, false otherwise
      */
     public boolean removeSong(Song song) {
-        return songs.remove(song);
+        if (!store.contains(song))
+            return false;
+        store = store.forWriting(this);
+        if (cache != null)
+            cache.songChanged(store.member(song));
+        return store.remove(song);
+    }
+
+    /**
+     * Returns the number of songs in the Playlist, regardless of its filters.
+     *
+     * @return the number of songs in the Playlist
+     */
+    public int size() {
+        return store.size();
+    }
+
+    /**
+     * Returns the total duration of the songs in the Playlist, regardless of its filters.
+     * The total is kept up to date as songs are added, removed and changed, so this takes constant time.
+     *
+     * @return the total duration in seconds
+     */
+    public long getTotalDuration() {
+        return store.totalDuration();
+    }
+
+    /**
+     * Returns the number of songs in the Playlist with the given genre, in constant time.
+     *
+     * @param genre the genre, or null for the songs without one
+     * @return the number of songs with the genre
+     */
+    public int getGenreCount(Song.Genre genre) {
+        return store.genreCount(genre);
+    }
+
+    /**
+     * Returns the total duration of the songs in the Playlist with the given genre, in constant time.
+     *
+     * @param genre the genre, or null for the songs without one
+     * @return the total duration of the songs with the genre, in seconds
+     */
+    public long getGenreDuration(Song.Genre genre) {
+        return store.genreDuration(genre);
+    }
+
+    /**
+     * Returns the total duration of the songs in the Playlist by the given artist.
+     * This adds up the songs of the artist only, without scanning the rest of the Playlist.
+     *
+     * @param artist the artist
+     * @return the total duration of the songs by the artist, in seconds
+     */
+    public long getArtistDuration(String artist) {
+        return store.artistDuration(artist);
+    }
+
+    /**
+     * Returns the duration of the shortest song in the Playlist, in logarithmic time.
+     *
+     * @return the shortest duration in seconds
+     * @throws NoSuchElementException if the Playlist is empty
+     */
+    public int getShortestDuration() {
+        return extreme(false).getDuration();
+    }
+
+    /**
+     * Returns the duration of the longest song in the Playlist, in logarithmic time.
+     *
+     * @return the longest duration in seconds
+     * @throws NoSuchElementException if the Playlist is empty
+     */
+    public int getLongestDuration() {
+        return extreme(true).getDuration();
+    }
+
+    private Song extreme(boolean longest) {
+        Song song = store.durationExtreme(longest);
+        if (song == null)
+            throw new NoSuchElementException();
+        return song;
+    }
+
+    /**
+     * Builds a new Playlist from the songs of this one selected by a query, whose total duration comes
+     * as close as possible to the target without exceeding it, such as an hour of jazz made of songs
+     * shorter than five minutes. The order, offset and limit of the query are ignored.
+     * This takes time linear in the number of songs selected by the query and bounded in the target,
+     * see {@link PlaylistFiller}. The new Playlist holds the songs themselves, by ascending duration,
+     * and is built on the same pool as this one.
+     *
+     * @param query          the query selecting the songs to pick from
+     * @param targetDuration the target total duration in seconds
+     * @return the new Playlist
+     * @throws IllegalArgumentException if the target duration is negative
+     */
+    public Playlist fill(SongQuery query, int targetDuration) {
+        if (targetDuration < 0)
+            throw new IllegalArgumentException("negative target duration: " + targetDuration);
+        SongQuery selection = query.unpaged().withOrder(ScanningOrder.ADDING);
+        List<Song> picked = PlaylistFiller.fill(new PlaylistIterator(selection, readableStore()), targetDuration);
+        Playlist filled = (pool == null) ? new Playlist() : new Playlist(pool);
+        filled.addAll(picked);
+        return filled;
+    }
+
+    /**
+     * Builds a new Playlist from the songs of this one that pass its filters, whose total duration comes
+     * as close as possible to the target without exceeding it (see {@link #fill(SongQuery, int)}).
+     *
+     * @param targetDuration the target total duration in seconds
+     * @return the new Playlist
+     * @throws IllegalArgumentException if the target duration is negative
+     */
+    public Playlist fill(int targetDuration) {
+        return fill(query, targetDuration);
     }
 
     /**
      * Creates a copy of the Playlist object.
+     * The copy has songs of its own, so changing a song of one playlist does not affect the other.
+     * The songs are only copied when they are first needed, though: until then the copy shares the
+     * songs of this Playlist, and they are copied once either playlist adds or removes a song,
+     * one of the shared songs is about to change, or the copy is iterated over. A copy that is dropped
+     * stops sharing the songs once it is garbage collected; until then, it still makes the next change
+     * to this Playlist copy them.
      *
      * @return a clone of the Playlist
      */
@@ -86,33 +315,59 @@ public class Playlist implements Cloneable, Iterable<Song>, FilteredSongIterable
         } catch (CloneNotSupportedException e) {
             return null;
         }
-        copyPlaylist.songs = new ArrayList<>();
-
-        for (int i = 0; i < songs.size(); i++)
-            copyPlaylist.songs.add(i, songs.get(i).clone());
+        store.share(copyPlaylist);
+        if (cache != null)
+            copyPlaylist.cache = new QueryCache(cache.capacity());
 
         return copyPlaylist;
     }
 
+    /**
+     * Returns the song of the Playlist equal to the given one.
+     *
+     * @param song the song to look for
+     * @return the song of the Playlist, or null if there is none
+     */
+    Song member(Song song) {
+        return readableStore().member(song);
+    }
+
+    /**
+     * Replaces the store of the Playlist, when the store it shared with other playlists has to
+     * give it one of its own.
+     *
+     * @param store the new store
+     */
+    void setStore(SongStore store) {
+        this.store = store;
+    }
+
     /**
      * Checks if the Playlist is equal to another object.
+     * Two playlists are equal if they contain the same songs, regardless of their order.
      *
      * @param other the object to compare
      * @return true if the objects are equal, false otherwise
      */
     @Override
     public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
         if (!(other instanceof Playlist)) {
             return false;
         }
         Playlist otherPlayList = (Playlist) other;
 
-        if (this.songs.size() != otherPlayList.songs.size()) {
+        if (this.store == otherPlayList.store) {
+            return true;
+        }
+        if (this.store.size() != otherPlayList.store.size() || this.store.hash() != otherPlayList.store.hash()) {
             return false;
         }
 
-        for (int i = 0; i < this.songs.size(); i++) {
-            if (!(otherPlayList.songs.contains(this.songs.get(i)))) {
+        for (Song song : this.store) {
+            if (!(otherPlayList.store.contains(song))) {
                 return false;
             }
         }
@@ -120,27 +375,109 @@ public class Playlist implements Cloneable, Iterable<Song>, FilteredSongIterable
     }
 
     /**
-     * Computes the hash code of the Playlist.
+     * Returns the hash code of the Playlist, the sum of the hash codes of its songs.
+     * It is kept up to date by addSong and removeSong, as a song's hash code only depends on
+     * its name and artist, which never change.
      *
      * @return the hash code of the Playlist
      */
     @Override
     public int hashCode() {
-        int res = 0;
-        for (Song song : songs)
-            res += song.hashCode();
-
-        return res;
+        return store.hash();
     }
 
     /**
-     * Returns an iterator over the songs in the Playlist.
+     * Returns an iterator over the songs in the Playlist, using the filters and scanning order set on it.
      *
      * @return an iterator over the songs in the Playlist
      */
     @Override
     public Iterator<Song> iterator() {
-        return new PlaylistIterator();
+        return iterator(query);
+    }
+
+    /**
+     * Returns an iterator over the songs in the Playlist selected by a query, in the order of the query.
+     * The filters and scanning order set on the Playlist are not used and not changed, so any number of
+     * threads may run their own queries on the Playlist at once, as long as none of them modifies it.
+     *
+     * @param query the query to run
+     * @return an iterator over the songs selected by the query
+     */
+    public Iterator<Song> iterator(SongQuery query) {
+        SongStore store = readableStore();
+        QueryCache cache = this.cache;
+        if (cache == null)
+            return new PlaylistIterator(query, store);
+
+        SongQuery unpaged = query.unpaged();
+        Song[] result = cache.get(unpaged, store);
+        if (result == null) {
+            List<Song> matching = new ArrayList<>();
+            new PlaylistIterator(unpaged, store).forEachRemaining(matching::add);
+            result = matching.toArray(new Song[0]);
+            cache.put(unpaged, store, result);
+        }
+        int from = Math.min(query.getOffset(), result.length);
+        int to = Math.min(query.getEnd(), result.length);
+        return Arrays.asList(result).subList(from, to).iterator();
+    }
+
+    /**
+     * Returns a spliterator over the songs in the Playlist that pass the filters, in the scanning order.
+     * The matching songs are collected when the spliterator is created, so it knows their exact number,
+     * splits evenly into halves of it, and is not affected by later changes to the Playlist.
+     *
+     * @return a spliterator over the songs in the Playlist
+     */
+    @Override
+    public Spliterator<Song> spliterator() {
+        return spliterator(query);
+    }
+
+    /**
+     * Returns a spliterator over the songs in the Playlist selected by a query, in the order of the query,
+     * collected when the spliterator is created.
+     *
+     * @param query the query to run
+     * @return a spliterator over the songs selected by the query
+     */
+    public Spliterator<Song> spliterator(SongQuery query) {
+        Song[] matching = new Song[Math.min(store.size(), query.getLimit())];
+        int count = 0;
+        for (Iterator<Song> songs = iterator(query); songs.hasNext(); )
+            matching[count++] = songs.next();
+        return Spliterators.spliterator(matching, 0, count,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
+    }
+
+    /**
+     * Returns a sequential stream of the songs in the Playlist that pass the filters, in the scanning order.
+     *
+     * @return a stream of the songs in the Playlist
+     */
+    public Stream<Song> stream() {
+        return stream(query);
+    }
+
+    /**
+     * Returns a sequential stream of the songs in the Playlist selected by a query, in the order of the query.
+     * Call parallel() on it to process the songs on several threads.
+     *
+     * @param query the query to run
+     * @return a stream of the songs selected by the query
+     */
+    public Stream<Song> stream(SongQuery query) {
+        return StreamSupport.stream(spliterator(query), false);
+    }
+
+    /**
+     * Returns a parallel stream of the songs in the Playlist that pass the filters, in the scanning order.
+     *
+     * @return a parallel stream of the songs in the Playlist
+     */
+    public Stream<Song> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
     }
 
     /**
@@ -150,7 +487,7 @@ public class Playlist implements Cloneable, Iterable<Song>, FilteredSongIterable
      */
     @Override
     public void filterArtist(String artist) {
-        this.filterArtist = artist;
+        this.query = query.withArtist(artist);
     }
 
     /**
@@ -160,7 +497,7 @@ public class Playlist implements Cloneable, Iterable<Song>, FilteredSongIterable
      */
     @Override
     public void filterGenre(Song.Genre genre) {
-        this.filterGenre = genre;
+        this.query = query.withGenre(genre);
     }
 
     /**
@@ -170,7 +507,7 @@ public class Playlist implements Cloneable, Iterable<Song>, FilteredSongIterable
      */
     @Override
     public void filterDuration(int maxDuration) {
-        this.filterDuration = maxDuration;
+        this.query = query.withMaxDuration(maxDuration);
     }
 
     /**
@@ -180,7 +517,17 @@ public class Playlist implements Cloneable, Iterable<Song>, FilteredSongIterable
      */
     @Override
     public void setScanningOrder(ScanningOrder order) {
-        this.order = order;
+        this.query = query.withOrder(order);
+    }
+
+    /**
+     * Sets the seed of the shuffled scanning order. Scans in that order visit the songs in the same
+     * order for the same seed, and in another one for another seed.
+     *
+     * @param seed the seed of the shuffled order
+     */
+    public void setShuffleSeed(long seed) {
+        this.query = query.withSeed(seed);
     }
 
     /**
@@ -189,40 +536,117 @@ public class Playlist implements Cloneable, Iterable<Song>, FilteredSongIterable
      * @return the scanning order of the Playlist
      */
     public ScanningOrder getOrder() {
-        return this.order;
+        return query.getOrder();
+    }
+
+    /**
+     * Sets the number of query results the Playlist caches, or turns the cache off.
+     * With a cache, running a query again only reads its cached result, as does running any page of it;
+     * the least recently used result is evicted when the cache is full. A page of a query that is not
+     * cached runs the whole query once and caches its result, so the following pages only slice it.
+     * A cached result is dropped when a song it may include is added or removed, and when the genre
+     * or duration of a song changes.
+     *
+     * @param capacity the maximum number of results to cache, 0 for no cache
+     * @throws IllegalArgumentException if the capacity is negative
+     */
+    public void setQueryCacheCapacity(int capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("negative capacity: " + capacity);
+        this.cache = (capacity == 0) ? null : new QueryCache(capacity);
     }
 
     /**
-     * The PlaylistIterator class represents an iterator over the songs in the Playlist.
+     * Returns the query made of the filters and scanning order currently set on the Playlist,
+     * which is what iterator() runs.
+     *
+     * @return the current query of the Playlist
+     */
+    public SongQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * Returns the store the Playlist may read its songs from, taking a store of its own first
+     * if the songs of a shared store belong to another playlist. The Playlist's lock guards its own
+     * store while the store keeps track of its holders under its lock, since clones of this Playlist
+     * may be read from other threads.
+     *
+     * @return the store to read from
+     */
+    private synchronized SongStore readableStore() {
+        store = store.forReading(this);
+        return store;
+    }
+
+    /**
+     * The PlaylistIterator class represents an iterator over the songs of the Playlist selected by a query.
+     * It walks the candidates chosen from the Playlist's indexes directly, so the Playlist should not be
+     * modified while it is being iterated.
      */
     private class PlaylistIterator implements Iterator<Song> {
 
-        private int i;
-        private List<Song> sortedSongs;
+        private final SongStore store;
+        private final Iterator<Song> source;
+        private final String artist;
+        private final Song.Genre genre;
+        private final int maxDuration;
+        private final boolean sortedByDuration;
+        private int toSkip;
+        private int remaining;
+        private Song nextSong;
 
         /**
-         * Constructs a PlaylistIterator.
+         * Constructs a PlaylistIterator running the given query over the songs of a store.
+         *
+         * @param query the query to run
+         * @param store the store holding the songs of the Playlist
          */
-        public PlaylistIterator() {
-            this.sortedSongs = new ArrayList<>();
-            for (Song song : songs) {
-                if ((filterArtist == null || song.getArtist().equals(filterArtist)) &&
-                        (filterGenre == null || song.getGenre().equals(filterGenre)) &&
-                        (song.getDuration() <= filterDuration)) {
-                    this.sortedSongs.add(song);
-                }
+        public PlaylistIterator(SongQuery query, SongStore store) {
+            this.artist = (pool == null) ? query.getArtist() : pool.knownArtist(query.getArtist());
+            this.genre = query.getGenre();
+            this.maxDuration = query.getMaxDuration();
+            this.sortedByDuration = query.getOrder() == ScanningOrder.DURATION;
+            this.toSkip = query.getOffset();
+            this.remaining = query.getLimit();
+            this.store = store;
+            this.source = store.candidates(artist, genre, maxDuration, query.getOrder(), query.getEnd(),
+                    query.getSeed());
+            advance();
+        }
+
+        /**
+         * Moves to the next song that passes the filters, past the songs the query skips,
+         * or to null if there is none or the limit of the query was reached, which ends the scan
+         * of the store. An iterator that is dropped before that leaves its scan open, which costs the
+         * store one copy of the index it scans, at the next song change.
+         */
+        private void advance() {
+            nextSong = null;
+            if (remaining > 0) {
+                remaining--;
+                nextSong = nextMatch();
             }
-            switch (order) {
-                case NAME:
-                    this.sortedSongs.sort(Comparator.comparing(Song::getName));
-                    break;
-                case DURATION:
-                    this.sortedSongs.sort(Comparator.comparingInt(Song::getDuration));
-                    break;
-                case ADDING:
-                default:
-                    break;
+            if (nextSong == null)
+                store.endScan(source);
+        }
+
+        private Song nextMatch() {
+            while (source.hasNext()) {
+                Song song = source.next();
+                if (song == null)
+                    continue;
+                if (sortedByDuration && song.getDuration() > maxDuration)
+                    return null;
+                if (SongStore.matches(song, artist, genre, maxDuration)) {
+                    if (toSkip > 0) {
+                        toSkip--;
+                        continue;
+                    }
+                    return song;
+                }
             }
+            return null;
         }
 
         /**
@@ -232,18 +656,21 @@ public class Playlist implements Cloneable, Iterable<Song>, FilteredSongIterable
          */
         @Override
         public boolean hasNext() {
-            return i < sortedSongs.size();
+            return nextSong != null;
         }
 
         /**
          * Returns the next song in the iteration.
          *
          * @return the next song
+         * @throws NoSuchElementException if there are no more songs
          */
         @Override
         public Song next() {
-            Song temp = sortedSongs.get(i);
-            i++;
+            if (nextSong == null)
+                throw new NoSuchElementException();
+            Song temp = nextSong;
+            advance();
             return temp;
         }
     }
@@ -0,0 +1,364 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The PlaylistFile class writes playlists to a compact binary file and maps such files back into memory.
+ * <p>
+ * A file holds the songs of a playlist in adding order. All numbers are big-endian:
+ * <pre>
+ *   header      magic "PLST", version, flags, song count, name count, artist count (ints),
+ *               then the offsets of the name table, artist table, columns and index sections
+ *               and the length of the file (longs), 64 bytes in all
+ *   name table  the end offset of each name (ints), then the names in UTF-8, in name order when
+ *               the file has an index
+ *   artist table the same for the artists
+ *   columns     the name id, artist id and duration of each song (ints), then its genre ordinal
+ *               (a byte, -1 for no genre)
+ *   index       optional: the songs in name order, then in duration order (ints)
+ * </pre>
+ * Each section starts at a multiple of 4 bytes.
+ */
+public final class PlaylistFile {
+
+    static final int MAGIC = 0x504C5354;
+    static final int VERSION = 1;
+    static final int HAS_INDEX = 1;
+    static final int HEADER_SIZE = 64;
+
+    private PlaylistFile() {
+    }
+
+    /**
+     * Writes the songs of a playlist to a file, with the index section.
+     *
+     * @param playlist the playlist to write
+     * @param file     the file to write, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Playlist playlist, Path file) throws IOException {
+        write(playlist, file, true);
+    }
+
+    /**
+     * Writes the songs of a playlist to a file, in adding order and regardless of the filters set on it.
+     * The index section lets a mapped file be scanned in name or duration order without sorting it first,
+     * for 8 more bytes per song.
+     *
+     * @param playlist  the playlist to write
+     * @param file      the file to write, replaced if it exists
+     * @param withIndex whether to write the index section
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Playlist playlist, Path file, boolean withIndex) throws IOException {
+        List<Song> songs = new ArrayList<>();
+        playlist.iterator(SongQuery.ALL).forEachRemaining(songs::add);
+        int size = songs.size();
+
+        StringDictionary names = new StringDictionary();
+        StringDictionary artists = new StringDictionary();
+        int[] byName = withIndex ? rowsByName(playlist, songs) : null;
+        if (byName != null) {
+            for (int row : byName)
+                names.encode(songs.get(row).getName());
+        }
+        int[] nameIds = new int[size];
+        int[] artistIds = new int[size];
+        for (int row = 0; row < size; row++) {
+            nameIds[row] = names.encode(songs.get(row).getName());
+            artistIds[row] = artists.encode(songs.get(row).getArtist());
+        }
+        byte[][] nameBytes = utf8(names);
+        byte[][] artistBytes = utf8(artists);
+
+        long namesOffset = HEADER_SIZE;
+        long artistsOffset = namesOffset + tableLength(nameBytes);
+        long columnsOffset = artistsOffset + tableLength(artistBytes);
+        long indexOffset = columnsOffset + align(13L * size);
+        long length = indexOffset + (withIndex ? 8L * size : 0);
+        if (length > Integer.MAX_VALUE)
+            throw new IOException("playlist too large for a single mapped file: " + length + " bytes");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(withIndex ? HAS_INDEX : 0);
+            out.writeInt(size);
+            out.writeInt(nameBytes.length);
+            out.writeInt(artistBytes.length);
+            out.writeLong(namesOffset);
+            out.writeLong(artistsOffset);
+            out.writeLong(columnsOffset);
+            out.writeLong(withIndex ? indexOffset : 0);
+            out.writeLong(length);
+
+            writeTable(out, nameBytes);
+            writeTable(out, artistBytes);
+            for (int row = 0; row < size; row++)
+                out.writeInt(nameIds[row]);
+            for (int row = 0; row < size; row++)
+                out.writeInt(artistIds[row]);
+            for (Song song : songs)
+                out.writeInt(song.getDuration());
+            for (Song song : songs)
+                out.writeByte(song.getGenre() == null ? -1 : song.getGenre().ordinal());
+            pad(out, size);
+
+            if (withIndex) {
+                for (int row : byName)
+                    out.writeInt(row);
+                for (int row : rowsByDuration(songs))
+                    out.writeInt(row);
+            }
+        }
+    }
+
+    /**
+     * Maps a playlist file into memory. The header is read and the file is checked up front: its sections
+     * must lie within it, its songs may only refer to the names, artists, genres and rows it holds, and
+     * its index must hold every row once, sorted.
+     * The songs themselves are read from the mapped file as they are needed.
+     *
+     * @param file the file to map
+     * @return the mapped playlist
+     * @throws PlaylistFormatException if the file is not a playlist file this version can read, or is damaged
+     * @throws IOException             if the file cannot be read
+     */
+    public static MappedPlaylist map(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new PlaylistFormatException("file too large to map: " + channel.size() + " bytes");
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        checkHeader(buffer, file);
+        checkColumns(buffer, file);
+        return new MappedPlaylist(buffer);
+    }
+
+    /**
+     * Checks that a buffer starts with the header of a playlist file of a version this class can read,
+     * and that its sections lie within the buffer, in order, with the string tables ending where they say.
+     */
+    private static void checkHeader(ByteBuffer buffer, Path file) throws PlaylistFormatException {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new PlaylistFormatException(file + " is not a playlist file");
+        int version = buffer.getInt(4);
+        if (version < 1 || version > VERSION)
+            throw new PlaylistFormatException(file + " has unsupported version " + version);
+        long size = buffer.getInt(12);
+        long length = buffer.getLong(56);
+        long namesOffset = buffer.getLong(24);
+        long artistsOffset = buffer.getLong(32);
+        long columnsOffset = buffer.getLong(40);
+        long indexOffset = buffer.getLong(48);
+        boolean hasIndex = (buffer.getInt(8) & HAS_INDEX) != 0;
+        if (size < 0 || length != buffer.capacity() || namesOffset < HEADER_SIZE ||
+                artistsOffset < namesOffset || columnsOffset < artistsOffset || columnsOffset + 13 * size > length ||
+                (hasIndex && (indexOffset < columnsOffset + 13 * size || indexOffset + 8 * size > length)) ||
+                !isTable(buffer, namesOffset, buffer.getInt(16), artistsOffset) ||
+                !isTable(buffer, artistsOffset, buffer.getInt(20), columnsOffset))
+            throw new PlaylistFormatException(file + " is truncated or corrupt");
+    }
+
+    /**
+     * Checks that a string table of the given number of strings starts at the given offset and ends by
+     * the given limit, its end offsets going up.
+     */
+    private static boolean isTable(ByteBuffer buffer, long offset, int count, long limit) {
+        if (count < 0 || offset + 4L * count > limit)
+            return false;
+        int end = 0;
+        for (int id = 0; id < count; id++) {
+            int next = buffer.getInt((int) offset + 4 * id);
+            if (next < end)
+                return false;
+            end = next;
+        }
+        return offset + 4L * count + end <= limit;
+    }
+
+    /**
+     * Checks that the songs of a buffer whose header was checked refer to names, artists and genres that
+     * exist, and that each part of its index section holds the rows of the file sorted by name or by
+     * duration, ties broken by row. A sorted scan stops at the first song past its bounds, so an index
+     * out of order would drop songs or repeat them. Each row following the previous one in that order
+     * also makes the index a permutation of the rows.
+     */
+    private static void checkColumns(ByteBuffer buffer, Path file) throws PlaylistFormatException {
+        int size = buffer.getInt(12);
+        int columns = (int) buffer.getLong(40);
+        int genres = Song.Genre.values().length;
+        for (int row = 0; row < size; row++) {
+            int name = buffer.getInt(columns + 4 * row);
+            int artist = buffer.getInt(columns + 4 * (size + row));
+            int genre = buffer.get(columns + 12 * size + row);
+            if (name < 0 || name >= buffer.getInt(16) || artist < 0 || artist >= buffer.getInt(20) ||
+                    genre < -1 || genre >= genres)
+                throw new PlaylistFormatException(file + " is corrupt: song " + row + " has no valid name, artist or genre");
+        }
+        if ((buffer.getInt(8) & HAS_INDEX) == 0)
+            return;
+        int index = (int) buffer.getLong(48);
+        for (int i = 0; i < 2 * size; i++) {
+            int row = buffer.getInt(index + 4 * i);
+            if (row < 0 || row >= size)
+                throw new PlaylistFormatException(file + " is corrupt: its index holds no song " + row);
+        }
+        int names = (int) buffer.getLong(24);
+        int nameCount = buffer.getInt(16);
+        boolean byIds = idsSorted(buffer, index, columns, size) && isSortedTable(buffer, names, nameCount);
+        for (int i = 1; i < size; i++) {
+            int previous = buffer.getInt(index + 4 * (i - 1));
+            int row = buffer.getInt(index + 4 * i);
+            int previousName = buffer.getInt(columns + 4 * previous);
+            int name = buffer.getInt(columns + 4 * row);
+            int order = byIds ? Integer.compare(previousName, name)
+                    : compareStrings(buffer, names, nameCount, previousName, name);
+            if (order > 0 || (order == 0 && previous >= row))
+                throw new PlaylistFormatException(file + " is corrupt: its name index is not sorted");
+            previous = buffer.getInt(index + 4 * (size + i - 1));
+            row = buffer.getInt(index + 4 * (size + i));
+            order = Integer.compare(buffer.getInt(columns + 4 * (2 * size + previous)),
+                    buffer.getInt(columns + 4 * (2 * size + row)));
+            if (order > 0 || (order == 0 && previous >= row))
+                throw new PlaylistFormatException(file + " is corrupt: its duration index is not sorted");
+        }
+    }
+
+    /**
+     * Checks whether the name ids of the rows never decrease along the name index, as they do in the
+     * files this class writes, whose name table is in name order.
+     */
+    private static boolean idsSorted(ByteBuffer buffer, int index, int columns, int size) {
+        for (int i = 1; i < size; i++) {
+            if (buffer.getInt(columns + 4 * buffer.getInt(index + 4 * (i - 1))) >
+                    buffer.getInt(columns + 4 * buffer.getInt(index + 4 * i)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the strings of a string table are in strictly increasing order, in which case
+     * comparing their ids compares the strings themselves. The strings are compared in the order they
+     * are laid out, which is much faster than comparing them in the order of an index.
+     */
+    private static boolean isSortedTable(ByteBuffer buffer, int table, int count) {
+        for (int id = 1; id < count; id++) {
+            if (compareStrings(buffer, table, count, id - 1, id) >= 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Compares two strings of a string table the way String.compareTo does, from their UTF-8 bytes.
+     * These are in code point order, which only differs from the order of String.compareTo between
+     * supplementary characters and characters from U+E000, so the strings are decoded when they differ
+     * at one of those.
+     */
+    private static int compareStrings(ByteBuffer buffer, int table, int count, int first, int second) {
+        if (first == second)
+            return 0;
+        int bytes = table + 4 * count;
+        int firstStart = (first == 0) ? 0 : buffer.getInt(table + 4 * (first - 1));
+        int firstLength = buffer.getInt(table + 4 * first) - firstStart;
+        int secondStart = (second == 0) ? 0 : buffer.getInt(table + 4 * (second - 1));
+        int secondLength = buffer.getInt(table + 4 * second) - secondStart;
+        for (int i = 0; i < firstLength && i < secondLength; i++) {
+            int firstByte = buffer.get(bytes + firstStart + i) & 0xFF;
+            int secondByte = buffer.get(bytes + secondStart + i) & 0xFF;
+            if (firstByte != secondByte) {
+                if (firstByte < 0xEE && secondByte < 0xEE)
+                    return firstByte - secondByte;
+                return string(buffer, bytes + firstStart, firstLength)
+                        .compareTo(string(buffer, bytes + secondStart, secondLength));
+            }
+        }
+        return firstLength - secondLength;
+    }
+
+    private static String string(ByteBuffer buffer, int offset, int length) {
+        byte[] string = new byte[length];
+        buffer.get(offset, string);
+        return new String(string, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the rows of the songs in name order, ties broken by adding order, read from the name index
+     * the playlist already keeps rather than sorted again.
+     */
+    private static int[] rowsByName(Playlist playlist, List<Song> songs) {
+        Map<Song, Integer> rowOf = new HashMap<>(2 * songs.size());
+        for (int row = 0; row < songs.size(); row++)
+            rowOf.put(songs.get(row), row);
+        int[] rows = new int[songs.size()];
+        int i = 0;
+        for (Iterator<Song> byName = playlist.iterator(SongQuery.ALL.withOrder(ScanningOrder.NAME)); byName.hasNext(); )
+            rows[i++] = rowOf.get(byName.next());
+        return rows;
+    }
+
+    /**
+     * Returns the rows of the songs in duration order, ties broken by adding order, sorting each row
+     * packed with its duration as a primitive long.
+     */
+    private static int[] rowsByDuration(List<Song> songs) {
+        long[] keys = new long[songs.size()];
+        for (int row = 0; row < keys.length; row++)
+            keys[row] = ((long) songs.get(row).getDuration() << 32) | row;
+        Arrays.sort(keys);
+        int[] rows = new int[keys.length];
+        for (int i = 0; i < rows.length; i++)
+            rows[i] = (int) keys[i];
+        return rows;
+    }
+
+    private static byte[][] utf8(StringDictionary dictionary) {
+        byte[][] bytes = new byte[dictionary.size()][];
+        for (int id = 0; id < bytes.length; id++)
+            bytes[id] = dictionary.decode(id).getBytes(StandardCharsets.UTF_8);
+        return bytes;
+    }
+
+    private static long tableLength(byte[][] strings) {
+        long length = 4L * strings.length;
+        for (byte[] string : strings)
+            length += string.length;
+        return align(length);
+    }
+
+    private static void writeTable(DataOutputStream out, byte[][] strings) throws IOException {
+        int end = 0;
+        for (byte[] string : strings) {
+            end += string.length;
+            out.writeInt(end);
+        }
+        for (byte[] string : strings)
+            out.write(string);
+        pad(out, end);
+    }
+
+    private static void pad(DataOutputStream out, long written) throws IOException {
+        for (long i = written; i < align(written); i++)
+            out.writeByte(0);
+    }
+
+    private static long align(long length) {
+        return (length + 3) & ~3L;
+    }
+}
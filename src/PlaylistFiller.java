@@ -0,0 +1,166 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The PlaylistFiller class picks songs whose total duration comes as close as possible to a target
+ * without exceeding it, as done by {@link Playlist#fill(SongQuery, int)}.
+ * The songs are grouped into buckets by duration, each holding at most as many songs as could fit in
+ * the target, so the work depends on the number of distinct durations rather than on the number of songs.
+ * The best total is then found by a subset-sum over the buckets, on a table of one int per second of the
+ * target. For long targets the longest songs are taken first, leaving only the last part of the target
+ * to the table, so that its size stays bounded. The best total is then found unless there are too many
+ * distinct durations for the table to go through all of them; the songs too long for it are then also
+ * taken first, as long as the shorter ones could not cover the rest of the target, and the total
+ * comes within the longest song of the best one.
+ */
+class PlaylistFiller {
+
+    /**
+     * The maximum number of table cells the subset-sum goes through, about a few milliseconds of work.
+     */
+    private static final long MAX_WORK = 1L << 24;
+
+    /**
+     * The longest target for which the buckets are found in an array indexed by duration
+     * rather than in a map.
+     */
+    private static final int DIRECT_BUCKETS = 1 << 16;
+    private static final int FREE = -1;
+
+    private PlaylistFiller() {
+    }
+
+    /**
+     * Picks songs whose total duration is as close as possible to the target without exceeding it,
+     * within the bounds of the class description.
+     * Songs of equal duration are picked in the order they are given.
+     *
+     * @param songs  the songs to pick from
+     * @param target the target duration in seconds
+     * @return the picked songs, by ascending duration
+     */
+    static List<Song> fill(Iterator<Song> songs, int target) {
+        Bucket[] direct = (target <= DIRECT_BUCKETS) ? new Bucket[target + 1] : null;
+        Map<Integer, Bucket> byDuration = (direct == null) ? new HashMap<>() : null;
+        List<Bucket> found = new ArrayList<>();
+        long total = 0;
+        while (songs.hasNext()) {
+            Song song = songs.next();
+            int duration = song.getDuration();
+            if (duration <= 0 || duration > target)
+                continue;
+            Bucket bucket = (direct != null) ? direct[duration] : byDuration.get(duration);
+            if (bucket == null) {
+                bucket = new Bucket(duration);
+                if (direct != null)
+                    direct[duration] = bucket;
+                else
+                    byDuration.put(duration, bucket);
+                found.add(bucket);
+            }
+            if (bucket.songs.size() < target / duration) {
+                bucket.songs.add(song);
+                total += duration;
+            }
+        }
+        Bucket[] buckets = found.toArray(new Bucket[0]);
+        Arrays.sort(buckets, (first, second) -> Integer.compare(first.duration, second.duration));
+        if (total <= target) {
+            for (Bucket bucket : buckets)
+                bucket.taken = bucket.songs.size();
+            return picked(buckets);
+        }
+
+        int longest = buckets[buckets.length - 1].duration;
+        int window = (int) Math.min(target, Math.max(MAX_WORK / buckets.length, 2L * longest));
+        int remaining = target;
+        for (int i = buckets.length - 1; i >= 0; i--) {
+            Bucket bucket = buckets[i];
+            while (bucket.taken < bucket.songs.size() && remaining - bucket.duration >= window) {
+                bucket.taken++;
+                remaining -= bucket.duration;
+            }
+        }
+        int table = tableSize(buckets.length, remaining);
+        long fine = 0;
+        for (int i = 0; i < table; i++)
+            fine += (long) buckets[i].duration * (buckets[i].songs.size() - buckets[i].taken);
+        for (int i = buckets.length - 1; i >= table && remaining > fine; i--) {
+            Bucket bucket = buckets[i];
+            while (bucket.taken < bucket.songs.size() && bucket.duration <= remaining && remaining > fine) {
+                bucket.taken++;
+                remaining -= bucket.duration;
+            }
+        }
+        subsetSum(buckets, remaining);
+        return picked(buckets);
+    }
+
+    /**
+     * Returns how many buckets, from the one with the shortest songs, the subset-sum goes through
+     * for the given sum within the work limit.
+     */
+    private static int tableSize(int buckets, int sum) {
+        return (int) Math.min(buckets, Math.max(1, MAX_WORK / (sum + 1)));
+    }
+
+    /**
+     * Takes from the songs left in the buckets the ones whose total duration is the largest one not
+     * exceeding the given sum. This is a bounded knapsack: for each sum, the table holds the bucket
+     * that first reached it and how many of its songs that took, so each bucket is only
+     * gone through once. If there are too many buckets for the work limit, only the ones with the
+     * shortest songs, which fill the gaps most finely, are used.
+     */
+    private static void subsetSum(Bucket[] buckets, int sum) {
+        int[] reachedBy = new int[sum + 1];
+        int[] used = new int[sum + 1];
+        Arrays.fill(reachedBy, FREE);
+        reachedBy[0] = buckets.length;
+        int count = tableSize(buckets.length, sum);
+        for (int i = 0; i < count && reachedBy[sum] == FREE; i++) {
+            int duration = buckets[i].duration;
+            int left = buckets[i].songs.size() - buckets[i].taken;
+            for (int s = 0; s <= sum; s++) {
+                if (reachedBy[s] != FREE) {
+                    used[s] = 0;
+                } else if (s >= duration && reachedBy[s - duration] != FREE && used[s - duration] < left) {
+                    reachedBy[s] = i;
+                    used[s] = used[s - duration] + 1;
+                }
+            }
+        }
+        int best = sum;
+        while (reachedBy[best] == FREE)
+            best--;
+        while (best > 0) {
+            Bucket bucket = buckets[reachedBy[best]];
+            bucket.taken++;
+            best -= bucket.duration;
+        }
+    }
+
+    private static List<Song> picked(Bucket[] buckets) {
+        List<Song> picked = new ArrayList<>();
+        for (Bucket bucket : buckets)
+            picked.addAll(bucket.songs.subList(0, bucket.taken));
+        return picked;
+    }
+
+    /**
+     * The Bucket class holds the songs of one duration and how many of them are picked.
+     */
+    private static class Bucket {
+
+        private final int duration;
+        private final List<Song> songs = new ArrayList<>();
+        private int taken;
+
+        Bucket(int duration) {
+            this.duration = duration;
+        }
+    }
+}
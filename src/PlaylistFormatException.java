@@ -0,0 +1,17 @@
+import java.io.IOException;
+
+/**
+ * The PlaylistFormatException is thrown when a file to be read as a playlist file is not one,
+ * is of a version that cannot be read, or is damaged.
+ */
+public class PlaylistFormatException extends IOException {
+
+    /**
+     * Constructs a PlaylistFormatException with the given message.
+     *
+     * @param message the detail message
+     */
+    public PlaylistFormatException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,440 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * The PlaylistJournal class keeps a Playlist durable in a directory, as a snapshot of the playlist and
+ * a journal of the changes made to it since.
+ * <p>
+ * Each change made through the journal is applied to the playlist and appended to the journal as a
+ * record, so writes are sequential and small. Records are buffered in memory until {@link #commit()},
+ * which writes them and forces them to disk; threads committing at the same time share a single force,
+ * and changes made since the last commit are lost if the process stops. Once the
+ * journal grows past a given size, committing also compacts it: the playlist is written to a new
+ * snapshot in the {@link PlaylistFile} format and the journal starts over.
+ * <p>
+ * Opening a directory loads the latest snapshot and replays the journal written after it. A last record
+ * that was only partly written when the process stopped is discarded, so the playlist is recovered as
+ * of its last complete change; a damaged record followed by others is not a torn write, and opening
+ * the journal fails rather than dropping the committed changes after it.
+ * <p>
+ * Snapshots and journals are numbered by generation (snapshot-N.bin, journal-N.log). A compaction
+ * writes the next generation in full before the previous one is deleted, so a crash at any point
+ * leaves one complete generation to recover from.
+ * <p>
+ * Changes must be made through the journal: changing the playlist or its songs directly is not recorded.
+ */
+public class PlaylistJournal implements Closeable {
+
+    /**
+     * The journal size, in bytes, past which a commit compacts it by default.
+     */
+    public static final long DEFAULT_COMPACTION_THRESHOLD = 64L << 20;
+
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    private static final byte SET_GENRE = 3;
+    private static final byte SET_DURATION = 4;
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    private final Path directory;
+    private final Playlist playlist;
+    private final Object syncLock = new Object();
+    private long compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+    private long generation;
+    private FileChannel journal;
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private long appended;
+    private long synced;
+
+    private PlaylistJournal(Path directory, Playlist playlist, long generation, FileChannel journal) {
+        this.directory = directory;
+        this.playlist = playlist;
+        this.generation = generation;
+        this.journal = journal;
+    }
+
+    /**
+     * Opens the journal kept in a directory, creating the directory if needed, and recovers its playlist.
+     *
+     * @param directory the directory holding the snapshots and journals
+     * @return the open journal
+     * @throws PlaylistFormatException if the snapshot or the journal is damaged beyond a torn last record
+     * @throws IOException             if the directory cannot be read or written
+     */
+    public static PlaylistJournal open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        long generation = latestGeneration(directory);
+        Path snapshot = snapshotPath(directory, generation);
+        Playlist playlist = Files.exists(snapshot) ? PlaylistFile.map(snapshot).toPlaylist() : new Playlist();
+        FileChannel journal = FileChannel.open(journalPath(directory, generation),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long end;
+        try {
+            end = replay(journal, playlist);
+        } catch (IOException | RuntimeException e) {
+            journal.close();
+            throw e;
+        }
+        journal.truncate(end);
+        journal.position(end);
+        deleteOtherGenerations(directory, generation);
+        return new PlaylistJournal(directory, playlist, generation, journal);
+    }
+
+    /**
+     * Returns the playlist kept by the journal. It should only be read; changes are made through the journal.
+     *
+     * @return the playlist
+     */
+    public Playlist playlist() {
+        return playlist;
+    }
+
+    /**
+     * Sets the journal size past which a commit compacts it into a new snapshot.
+     *
+     * @param bytes the size of the journal in bytes
+     */
+    public synchronized void setCompactionThreshold(long bytes) {
+        this.compactionThreshold = bytes;
+    }
+
+    /**
+     * Adds a song to the playlist and records it.
+     *
+     * @param song the song to add
+     * @throws SongAlreadyExistsException if the song already exists in the playlist
+     */
+    public synchronized void addSong(Song song) {
+        playlist.addSong(song);
+        append(ADD, song.getName(), song.getArtist(), genreByte(song.getGenre()), song.getDuration());
+    }
+
+    /**
+     * Removes a song from the playlist and records it.
+     *
+     * @param song the song to remove
+     * @return true if the song was removed, false otherwise
+     */
+    public synchronized boolean removeSong(Song song) {
+        if (!playlist.removeSong(song))
+            return false;
+        append(REMOVE, song.getName(), song.getArtist(), (byte) 0, 0);
+        return true;
+    }
+
+    /**
+     * Sets the genre of a song of the playlist and records it.
+     *
+     * @param song  the song, or a song equal to it
+     * @param genre the genre to set
+     * @return true if the playlist has the song, false otherwise
+     */
+    public synchronized boolean setGenre(Song song, Song.Genre genre) {
+        Song member = playlist.member(song);
+        if (member == null)
+            return false;
+        member.setGenre(genre);
+        append(SET_GENRE, member.getName(), member.getArtist(), genreByte(genre), 0);
+        return true;
+    }
+
+    /**
+     * Sets the duration of a song of the playlist and records it.
+     *
+     * @param song     the song, or a song equal to it
+     * @param duration the duration to set
+     * @return true if the playlist has the song, false otherwise
+     */
+    public synchronized boolean setDuration(Song song, int duration) {
+        Song member = playlist.member(song);
+        if (member == null)
+            return false;
+        member.setDuration(duration);
+        append(SET_DURATION, member.getName(), member.getArtist(), (byte) 0, duration);
+        return true;
+    }
+
+    /**
+     * Writes the changes recorded so far and forces them to disk, then compacts the journal if it has
+     * grown past the compaction threshold.
+     * If another thread is forcing the journal meanwhile, this waits for it and only forces the changes
+     * that are still left, if any.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    public void commit() throws IOException {
+        long target;
+        synchronized (this) {
+            target = appended;
+        }
+        synchronized (syncLock) {
+            if (synced < target) {
+                long covered;
+                FileChannel channel;
+                synchronized (this) {
+                    flushBuffer();
+                    covered = appended;
+                    channel = journal;
+                }
+                channel.force(false);
+                synced = covered;
+            }
+            boolean compact;
+            synchronized (this) {
+                compact = journal.size() > compactionThreshold;
+            }
+            if (compact)
+                compact();
+        }
+    }
+
+    /**
+     * Writes the playlist to a new snapshot and starts a new, empty journal after it.
+     *
+     * @throws IOException if the snapshot or journal cannot be written
+     */
+    public void compact() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                long next = generation + 1;
+                Path snapshot = snapshotPath(directory, next);
+                Path temporary = directory.resolve(snapshot.getFileName() + ".tmp");
+                PlaylistFile.write(playlist, temporary);
+                try (FileChannel written = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                    written.force(true);
+                }
+                Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+                FileChannel nextJournal = FileChannel.open(journalPath(directory, next),
+                        StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+                forceDirectory();
+                journal.close();
+                journal = nextJournal;
+                generation = next;
+                buffer.reset();
+                synced = appended;
+                deleteOtherGenerations(directory, generation);
+            }
+        }
+    }
+
+    /**
+     * Commits the recorded changes and closes the journal.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            commit();
+            synchronized (this) {
+                journal.close();
+            }
+        }
+    }
+
+    /**
+     * Appends a record to the buffer.
+     * A record is its length and CRC-32 checksum (ints), then its type, the name and artist of the song
+     * (each as a length and UTF-8 bytes), a genre byte and a duration.
+     */
+    private void append(byte type, String name, String artist, byte genre, int duration) {
+        try {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(payload);
+            out.writeByte(type);
+            writeString(out, name);
+            writeString(out, artist);
+            out.writeByte(genre);
+            out.writeInt(duration);
+            byte[] bytes = payload.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            DataOutputStream record = new DataOutputStream(buffer);
+            record.writeInt(bytes.length);
+            record.writeInt((int) crc.getValue());
+            record.write(bytes);
+            appended++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+        while (bytes.hasRemaining())
+            journal.write(bytes);
+        buffer.reset();
+    }
+
+    /**
+     * Applies the complete records of a journal to a playlist.
+     * A torn last record, one that runs to the end of the journal and is cut short or fails its checksum,
+     * is left out, as are zeroes filling the end of the journal; any other damaged record is rejected.
+     *
+     * @return the position after the last complete record
+     * @throws PlaylistFormatException if a record before the last one is damaged, or the journal is too large
+     */
+    private static long replay(FileChannel journal, Playlist playlist) throws IOException {
+        long size = journal.size();
+        if (size > Integer.MAX_VALUE)
+            throw new PlaylistFormatException("journal of " + size + " bytes is too large to replay");
+        ByteBuffer contents = ByteBuffer.allocate((int) size);
+        while (contents.hasRemaining() && journal.read(contents, contents.position()) >= 0) {
+        }
+        contents.flip();
+        int end = 0;
+        ByteBuffer header = contents.duplicate();
+        while (header.remaining() >= RECORD_HEADER_SIZE) {
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (length > header.remaining())
+                break;
+            if (length <= 0) {
+                if (zeroesFrom(contents, end))
+                    break;
+                throw new PlaylistFormatException("journal record at " + end + " has length " + length);
+            }
+            byte[] bytes = new byte[length];
+            header.get(bytes);
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            if ((int) crc.getValue() != checksum) {
+                if (!header.hasRemaining())
+                    break;
+                throw new PlaylistFormatException("journal record at " + end + " fails its checksum");
+            }
+            apply(bytes, playlist);
+            end = header.position();
+        }
+        return end;
+    }
+
+    private static boolean zeroesFrom(ByteBuffer contents, int position) {
+        for (int i = position; i < contents.limit(); i++) {
+            if (contents.get(i) != 0)
+                return false;
+        }
+        return true;
+    }
+
+    private static void apply(byte[] record, Playlist playlist) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte type = in.readByte();
+        String name = readString(in);
+        String artist = readString(in);
+        Song.Genre genre = genreOf(in.readByte());
+        int duration = in.readInt();
+        Song song = new Song(name, artist, genre, duration);
+        Song member = playlist.member(song);
+        switch (type) {
+            case ADD:
+                if (member == null)
+                    playlist.addSong(song);
+                break;
+            case REMOVE:
+                playlist.removeSong(song);
+                break;
+            case SET_GENRE:
+                if (member != null)
+                    member.setGenre(genre);
+                break;
+            case SET_DURATION:
+                if (member != null)
+                    member.setDuration(duration);
+                break;
+            default:
+                throw new PlaylistFormatException("unknown journal record type " + type);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte genreByte(Song.Genre genre) {
+        return (genre == null) ? -1 : (byte) genre.ordinal();
+    }
+
+    private static Song.Genre genreOf(byte genre) {
+        return (genre < 0) ? null : Song.Genre.values()[genre];
+    }
+
+    /**
+     * Returns the latest generation with a snapshot, or 0 if there is none.
+     */
+    private static long latestGeneration(Path directory) throws IOException {
+        long latest = 0;
+        try (DirectoryStream<Path> snapshots = Files.newDirectoryStream(directory, "snapshot-*.bin")) {
+            for (Path snapshot : snapshots)
+                latest = Math.max(latest, generationOf(snapshot, "snapshot-", ".bin"));
+        }
+        return latest;
+    }
+
+    /**
+     * Deletes the snapshots, journals and unfinished snapshots of every generation but the given one.
+     */
+    private static void deleteOtherGenerations(Path directory, long generation) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "{snapshot,journal}-*")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                boolean current = name.equals(snapshotPath(directory, generation).getFileName().toString()) ||
+                        name.equals(journalPath(directory, generation).getFileName().toString());
+                if (!current)
+                    Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static long generationOf(Path file, String prefix, String suffix) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static Path snapshotPath(Path directory, long generation) {
+        return directory.resolve("snapshot-" + generation + ".bin");
+    }
+
+    private static Path journalPath(Path directory, long generation) {
+        return directory.resolve("journal-" + generation + ".log");
+    }
+
+    /**
+     * Forces the directory entries of a new snapshot and journal to disk, where the platform allows it.
+     */
+    private void forceDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not every platform can open a directory; the files themselves are already forced.
+        }
+    }
+}
@@ -0,0 +1,104 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The QueryCache class keeps the results of the latest queries run on a Playlist, so that running
+ * one of them again only reads its result.
+ * Results are kept for the filters and order of a query, regardless of its page, and at most a given
+ * number of them are kept, evicting the least recently used one.
+ * A result is dropped when a song it may include is added to or removed from the Playlist, or has its
+ * genre or duration changed, and all of them are dropped when the Playlist gets another store.
+ * The store tells the cache about the changes to its songs (see {@link SongStore#addCache(QueryCache)}).
+ * The cache may be used by several threads running queries at once.
+ */
+class QueryCache {
+
+    private final int capacity;
+    private final LinkedHashMap<SongQuery, Song[]> results;
+    private SongStore store;
+
+    /**
+     * Constructs an empty QueryCache holding at most the given number of results.
+     *
+     * @param capacity the maximum number of results to keep
+     */
+    QueryCache(int capacity) {
+        this.capacity = capacity;
+        this.results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<SongQuery, Song[]> eldest) {
+                return size() > QueryCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the maximum number of results the cache keeps.
+     *
+     * @return the capacity of the cache
+     */
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the cached result of a query, the matching songs in the order of the query.
+     *
+     * @param query the query, without a page
+     * @param store the store the query runs on
+     * @return the songs selected by the query, or null if they are not cached
+     */
+    synchronized Song[] get(SongQuery query, SongStore store) {
+        validate(store);
+        return results.get(query);
+    }
+
+    /**
+     * Caches the result of a query.
+     *
+     * @param query  the query, without a page
+     * @param store  the store the query ran on
+     * @param result the songs selected by the query, in the order of the query
+     */
+    synchronized void put(SongQuery query, SongStore store, Song[] result) {
+        validate(store);
+        results.put(query, result);
+    }
+
+    /**
+     * Drops the results that may include a song that was added to or removed from the Playlist, or
+     * whose genre or duration is changing. A change is reported both before and after it, so that
+     * the results the song leaves and the ones it joins are dropped.
+     *
+     * @param song the song added, removed or changed
+     */
+    synchronized void songChanged(Song song) {
+        Iterator<SongQuery> queries = results.keySet().iterator();
+        while (queries.hasNext()) {
+            if (queries.next().matches(song))
+                queries.remove();
+        }
+    }
+
+    /**
+     * Drops all the results, as when many songs are added to the Playlist at once.
+     */
+    synchronized void clear() {
+        results.clear();
+    }
+
+    /**
+     * Drops all the results if they were computed on another store, and listens to the changes of the
+     * songs of the new one instead.
+     */
+    private void validate(SongStore store) {
+        if (this.store != store) {
+            results.clear();
+            if (this.store != null)
+                this.store.removeCache(this);
+            store.addCache(this);
+            this.store = store;
+        }
+    }
+}
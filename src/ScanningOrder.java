@@ -15,5 +15,12 @@ public enum ScanningOrder {
     /**
      * Represents the scanning order of songs by duration in ascending order.
      */
-    DURATION
+    DURATION,
+
+    /**
+     * Represents a random scanning order, given by the seed of the query (see {@link SongQuery#withSeed(long)}).
+     * The order is computed one song at a time as the scan goes, so a scan starts without copying
+     * or shuffling the songs.
+     */
+    SHUFFLE
 }
@@ -0,0 +1,185 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.UnaryOperator;
+
+/**
+ * An implementation of the Stack interface that grows as elements are pushed.
+ * The elements are kept in fixed-size segments that are allocated on demand and released as the
+ * stack shrinks, so the memory used follows the actual size of the stack rather than its capacity.
+ *
+ * @param <E> the type of elements in the stack
+ */
+public class SegmentedStack<E extends Cloneable> implements Stack<E> {
+    private static final int SEGMENT_SHIFT = 9;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private Cloneable[][] segments;
+    private final int maxCapacity;
+    private int size;
+    private final UnaryOperator<E> copier;
+
+    /**
+     * Constructs a new SegmentedStack with no limit on its size.
+     */
+    public SegmentedStack() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a new SegmentedStack that holds at most the specified number of elements.
+     * Its elements are copied by their public clone method when the stack is cloned.
+     *
+     * @param maxCapacity the maximum capacity of the stack
+     * @throws NegativeCapacityException if the specified maximum capacity is negative
+     */
+    public SegmentedStack(int maxCapacity) throws NegativeCapacityException {
+        this(maxCapacity, ArrayStack::cloneElement);
+    }
+
+    /**
+     * Constructs a new SegmentedStack that holds at most the specified number of elements,
+     * whose elements are copied by the given copier when the stack is cloned.
+     *
+     * @param maxCapacity the maximum capacity of the stack
+     * @param copier      the function returning a copy of an element
+     * @throws NegativeCapacityException if the specified maximum capacity is negative
+     */
+    public SegmentedStack(int maxCapacity, UnaryOperator<E> copier) throws NegativeCapacityException {
+        if (maxCapacity < 0) {
+            throw new NegativeCapacityException();
+        }
+        this.maxCapacity = maxCapacity;
+        this.copier = copier;
+        segments = new Cloneable[1][];
+        size = 0;
+    }
+
+    /**
+     * Pushes an element onto the top of the stack, allocating a new segment when the current one is full.
+     *
+     * @param element the element to be pushed onto the stack
+     * @throws StackOverflowException if the stack already holds its maximum capacity of elements
+     */
+    @Override
+    public void push(E element) {
+        if (size == maxCapacity) {
+            throw new StackOverflowException();
+        }
+        int segment = size >>> SEGMENT_SHIFT;
+        if (segment == segments.length) {
+            segments = Arrays.copyOf(segments, segments.length * 2);
+        }
+        if (segments[segment] == null) {
+            segments[segment] = new Cloneable[SEGMENT_SIZE];
+        }
+        segments[segment][size & SEGMENT_MASK] = element;
+        size++;
+    }
+
+    /**
+     * Removes and returns the element at the top of the stack.
+     * Once a segment is emptied it is kept for the next pushes, and the spare segment above it is released.
+     *
+     * @return the element at the top of the stack
+     * @throws EmptyStackException if the stack is empty
+     */
+    @Override
+    public E pop() {
+        if (size == 0) {
+            throw new EmptyStackException();
+        }
+        size--;
+        int segment = size >>> SEGMENT_SHIFT;
+        int offset = size & SEGMENT_MASK;
+        E temp = (E) segments[segment][offset];
+        segments[segment][offset] = null;
+        if (offset == 0 && segment + 1 < segments.length) {
+            segments[segment + 1] = null;
+        }
+        return temp;
+    }
+
+    @Override
+    public E peek() {
+        if (size == 0) {
+            throw new EmptyStackException();
+        }
+        return get(size - 1);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Creates and returns a clone of the stack, holding copies of its elements made by the stack's copier.
+     * Only the segments in use are copied.
+     *
+     * @return a clone of the stack
+     * @throws StackCloneException if an element cannot be copied
+     */
+    @Override
+    public SegmentedStack<E> clone() {
+        SegmentedStack<E> copyStack;
+        try {
+            copyStack = (SegmentedStack<E>) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new StackCloneException(e);
+        }
+
+        copyStack.segments = new Cloneable[segments.length][];
+        for (int i = 0; i < size; i++) {
+            int segment = i >>> SEGMENT_SHIFT;
+            if (copyStack.segments[segment] == null) {
+                copyStack.segments[segment] = new Cloneable[SEGMENT_SIZE];
+            }
+            copyStack.segments[segment][i & SEGMENT_MASK] = copier.apply(get(i));
+        }
+        return copyStack;
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new StackIterator();
+    }
+
+    /**
+     * Returns the element at the given index, counted from the bottom of the stack.
+     *
+     * @param index the index of the element
+     * @return the element at the index
+     */
+    private E get(int index) {
+        return (E) segments[index >>> SEGMENT_SHIFT][index & SEGMENT_MASK];
+    }
+
+    /**
+     * An iterator implementation for SegmentedStack, from the top of the stack to its bottom.
+     */
+    private class StackIterator implements Iterator<E> {
+        private int i = size() - 1;
+
+        @Override
+        public boolean hasNext() {
+            return i >= 0;
+        }
+
+        @Override
+        public E next() {
+            if (i < 0) {
+                throw new NoSuchElementException();
+            }
+            E nextElement = get(i);
+            i--;
+            return nextElement;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/**
+ * The ShufflePermutation class is a random permutation of the positions 0 to size - 1, given by a seed,
+ * that is computed one position at a time rather than stored, so shuffling takes no memory and no setup.
+ * A position is encrypted by a four-round Feistel network over the smallest domain of an even number of
+ * bits holding all the positions, which is a permutation of that domain; encrypting again while the
+ * result is out of range ("cycle walking") makes it a permutation of the positions themselves.
+ * Since the domain is less than four times the size, a position takes a few encryptions on average.
+ */
+class ShufflePermutation {
+
+    private static final int ROUNDS = 4;
+
+    private final long size;
+    private final int halfBits;
+    private final long halfMask;
+    private final long[] keys = new long[ROUNDS];
+
+    /**
+     * Constructs the permutation of the given number of positions given by a seed.
+     *
+     * @param size the number of positions
+     * @param seed the seed of the permutation
+     */
+    ShufflePermutation(int size, long seed) {
+        this.size = size;
+        int bits = 64 - Long.numberOfLeadingZeros(Math.max(size - 1, 1));
+        this.halfBits = (bits + 1) / 2;
+        this.halfMask = (1L << halfBits) - 1;
+        long state = seed;
+        for (int round = 0; round < ROUNDS; round++) {
+            state += 0x9E3779B97F4A7C15L;
+            keys[round] = mix(state);
+        }
+    }
+
+    /**
+     * Returns the number of positions.
+     *
+     * @return the size of the permutation
+     */
+    int size() {
+        return (int) size;
+    }
+
+    /**
+     * Returns the position the given position is moved to.
+     *
+     * @param position a position between 0 and size - 1
+     * @return the shuffled position, between 0 and size - 1
+     */
+    int get(int position) {
+        long shuffled = position;
+        do {
+            shuffled = encrypt(shuffled);
+        } while (shuffled >= size);
+        return (int) shuffled;
+    }
+
+    private long encrypt(long value) {
+        long left = value >>> halfBits;
+        long right = value & halfMask;
+        for (long key : keys) {
+            long next = left ^ (mix(right ^ key) & halfMask);
+            left = right;
+            right = next;
+        }
+        return (left << halfBits) | right;
+    }
+
+    /**
+     * The finalizer of the SplitMix64 generator, which spreads every bit of its input over its output.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+}
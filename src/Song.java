@@ -1,4 +1,10 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.ref.Reference;
+import java.util.LinkedHashSet;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The Song class represents a song with its name, artist, genre, and duration.
@@ -6,11 +12,19 @@ import java.util.Objects;
  */
 public class Song implements Cloneable {
 
+    private static final AtomicInteger modificationCount = new AtomicInteger();
+
     private final String name;
     private final String artist;
     private Genre genre;
     private int duration;
 
+    /**
+     * The references to the listeners of the song: null, a single reference, or a {@link Listeners} set
+     * of them once there is more than one, guarded by the song's lock.
+     */
+    private volatile Object listeners;
+
     /**
      * Constructs a Song object with the specified name, artist, genre, and duration.
      *
@@ -68,7 +82,10 @@ public class Song implements Cloneable {
      * @param genre the genre to set
      */
     public void setGenre(Genre genre) {
+        notifyListeners(listeners(), true);
         this.genre = genre;
+        modificationCount.incrementAndGet();
+        notifyListeners(listeners(), false);
     }
 
     /**
@@ -77,24 +94,194 @@ public class Song implements Cloneable {
      * @param duration the duration to set
      */
     public void setDuration(int duration) {
+        notifyListeners(listeners(), true);
         this.duration = duration;
+        modificationCount.incrementAndGet();
+        notifyListeners(listeners(), false);
+    }
+
+    /**
+     * Registers a listener to be notified of the changes to the genre and duration of the song.
+     * The song only holds the given reference, so it does not keep the listener alive; a listener
+     * watching many songs registers the same reference with all of them.
+     * Registering takes constant time however many listeners the song has, as songs shared through
+     * a {@link SongPool} may have one per playlist.
+     *
+     * @param listener a reference to the listener
+     */
+    synchronized void addListener(Reference<? extends SongListener> listener) {
+        Object current = listeners;
+        if (current == null || ((current instanceof Reference) && ((Reference<?>) current).get() == null)) {
+            listeners = listener;
+        } else if (current instanceof Listeners) {
+            ((Listeners) current).register(listener);
+        } else {
+            Listeners set = new Listeners();
+            set.add((Reference<?>) current);
+            set.add(listener);
+            listeners = set;
+        }
+    }
+
+    /**
+     * Unregisters a listener registered with {@link #addListener(Reference)}, along with the listeners
+     * that were garbage collected.
+     *
+     * Unregistering a listener takes constant time, while dropping the collected ones goes through them all.
+     *
+     * @param listener the reference the listener was registered with, or null to only drop the collected ones
+     */
+    synchronized void removeListener(Reference<? extends SongListener> listener) {
+        Object current = listeners;
+        if (current instanceof Listeners) {
+            Listeners set = (Listeners) current;
+            if (listener == null)
+                set.prune();
+            else
+                set.remove(listener);
+            if (set.isEmpty())
+                listeners = null;
+        } else if (current != null && (current == listener || ((Reference<?>) current).get() == null)) {
+            listeners = null;
+        }
+    }
+
+    /**
+     * Returns the listeners to notify of a change: the single reference, if the song has one,
+     * or an array copied from the set of them, so that listeners can register and unregister while
+     * they are notified.
+     */
+    private Object listeners() {
+        Object current = listeners;
+        if (!(current instanceof Listeners))
+            return current;
+        synchronized (this) {
+            current = listeners;
+            return (current instanceof Listeners) ? ((Listeners) current).toArray() : current;
+        }
+    }
+
+    /**
+     * Notifies the listeners of the start or the end of a change, and drops the references to the
+     * ones that were garbage collected.
+     */
+    private void notifyListeners(Object listeners, boolean before) {
+        boolean cleared = false;
+        if (listeners instanceof Object[]) {
+            for (Object reference : (Object[]) listeners)
+                cleared |= !notifyListener(reference, before);
+        } else if (listeners != null) {
+            cleared = !notifyListener(listeners, before);
+        }
+        if (cleared)
+            removeListener(null);
     }
 
     /**
-     * Formats the duration of the song in minutes and seconds (mm:ss) format.
+     * Notifies a listener, unless it was garbage collected.
      *
-     * @return the formatted duration string
+     * @return false if the listener was garbage collected, true otherwise
      */
-    private String timeManage() {
+    private boolean notifyListener(Object reference, boolean before) {
+        SongListener listener = (SongListener) ((Reference<?>) reference).get();
+        if (listener == null)
+            return false;
+        if (before)
+            listener.beforeChange(this);
+        else
+            listener.afterChange(this);
+        return true;
+    }
+
+    /**
+     * The references to the listeners of a song that has more than one, in the order they were registered.
+     * Listeners that are garbage collected without unregistering are dropped when a change notifies
+     * the song's listeners, and otherwise whenever the set has doubled in size since they last were.
+     */
+    private static class Listeners extends LinkedHashSet<Reference<?>> {
+
+        private static final int MIN_PRUNE_SIZE = 16;
+
+        private int pruneAt = MIN_PRUNE_SIZE;
+
+        void register(Reference<?> reference) {
+            add(reference);
+            if (size() >= pruneAt) {
+                prune();
+                pruneAt = Math.max(MIN_PRUNE_SIZE, 2 * size());
+            }
+        }
+
+        void prune() {
+            removeIf(reference -> reference.get() == null);
+        }
+    }
+
+    /**
+     * Returns the number of times the genre or duration of any song has been changed.
+     * Structures that order or group songs by these fields without listening to them, such as
+     * immutable snapshots, compare it against the value they were built with to find out whether
+     * they are still valid. The count is read and incremented atomically, after the field changes,
+     * so a thread that reads it and then reads the songs sees every change it counts.
+     *
+     * @return the number of changes made to the mutable fields of all songs
+     */
+    static int getModificationCount() {
+        return modificationCount.get();
+    }
+
+    /**
+     * Appends the duration of the song in minutes and seconds (mm:ss) format.
+     *
+     * @param out the destination
+     * @throws IOException if appending fails
+     */
+    private void appendDuration(Appendable out) throws IOException {
         int min = duration / 60;
         int second = duration % 60;
-        String s;
+        appendNumber(out, min);
+        out.append(':');
         if (second < 10)
-            s = min + ":0" + second;
+            out.append('0');
+        appendNumber(out, second);
+    }
+
+    /**
+     * Appends the decimal digits of a number one by one, without building a string for it.
+     * The digits are computed on the negative value, which holds every int.
+     */
+    private static void appendNumber(Appendable out, int value) throws IOException {
+        if (value < 0)
+            out.append('-');
         else
-            s = min + ":" + second;
+            value = -value;
+        int divisor = 1;
+        while (value / divisor <= -10)
+            divisor *= 10;
+        for (; divisor > 0; divisor /= 10)
+            out.append((char) ('0' - value / divisor % 10));
+    }
 
-        return s;
+    /**
+     * Parses a duration in minutes and seconds (mm:ss) format, as written by {@link #toString()}.
+     *
+     * @param duration the formatted duration
+     * @return the duration in seconds
+     * @throws IllegalArgumentException if the duration is not in mm:ss format
+     */
+    static int parseDuration(String duration) {
+        int colon = duration.indexOf(':');
+        if (colon < 1 || duration.length() - colon != 3)
+            throw new IllegalArgumentException("duration not in mm:ss format: " + duration);
+        try {
+            int min = Integer.parseInt(duration.substring(0, colon));
+            int second = Integer.parseInt(duration.substring(colon + 1));
+            if (min < 0 || second < 0 || second > 59 || !Character.isDigit(duration.charAt(colon + 1)))
+                throw new IllegalArgumentException("duration not in mm:ss format: " + duration);
+            return Math.addExact(Math.multiplyExact(min, 60), second);
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("duration not in mm:ss format: " + duration);
+        }
     }
 
     /**
@@ -105,7 +292,41 @@ public class Song implements Cloneable {
      */
     @Override
     public String toString() {
-        return name + ", " + artist + ", " + genre + ", " + timeManage();
+        StringBuilder song = new StringBuilder(name.length() + artist.length() + 20);
+        try {
+            appendTo(song);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return song.toString();
+    }
+
+    /**
+     * Appends the string representation of the Song, as returned by {@link #toString()}, to the given
+     * destination, without building intermediate strings.
+     *
+     * @param out the destination
+     * @param <A> the type of the destination
+     * @return the destination
+     * @throws IOException if appending fails
+     */
+    public <A extends Appendable> A appendTo(A out) throws IOException {
+        out.append(name).append(", ").append(artist).append(", ");
+        out.append((genre == null) ? "null" : genre.name()).append(", ");
+        appendDuration(out);
+        return out;
+    }
+
+    /**
+     * Writes the string representation of the Song, as returned by {@link #toString()}, to a writer
+     * and flushes it. The writer is not closed.
+     *
+     * @param writer the writer to write to
+     * @throws IOException if writing fails
+     */
+    public void writeTo(Writer writer) throws IOException {
+        appendTo(writer);
+        writer.flush();
     }
 
     /**
@@ -136,14 +357,16 @@ public class Song implements Cloneable {
     }
 
     /**
-     * Creates and returns a clone of the Song.
+     * Creates and returns a clone of the Song. The clone has no listeners.
      *
      * @return a clone of the Song
      */
     @Override
     public Song clone() {
         try {
-            return (Song) super.clone();
+            Song copy = (Song) super.clone();
+            copy.listeners = null;
+            return copy;
         } catch (CloneNotSupportedException e) {
             return null;
         }
@@ -0,0 +1,216 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+/**
+ * The SongImporter class reads songs from delimited text, such as CSV or TSV files, into a playlist.
+ * Each line holds the name, artist, genre and duration of a song, in the order and formats of
+ * {@link Song#toString()}: the genre by its name (or "null", or nothing, for none) and the duration
+ * in mm:ss format. Spaces around fields are ignored, and a field may be enclosed in double quotes,
+ * with doubled double quotes inside it, to hold the delimiter.
+ * The lines are read one at a time and handed to {@link Playlist#addAll(Iterable, java.util.function.Consumer)},
+ * so a file of any length is imported in a single bulk add without being held in memory.
+ * Duplicate songs and lines that cannot be read are reported rather than stopping the import.
+ */
+public class SongImporter {
+
+    private static final int FIELDS = 4;
+
+    private final char delimiter;
+    private final boolean skipHeader;
+
+    /**
+     * Constructs a SongImporter for lines separated by the given delimiter.
+     *
+     * @param delimiter  the character between the fields of a line
+     * @param skipHeader whether the first line holds column titles rather than a song
+     */
+    public SongImporter(char delimiter, boolean skipHeader) {
+        this.delimiter = delimiter;
+        this.skipHeader = skipHeader;
+    }
+
+    /**
+     * Returns a SongImporter for comma-separated lines without a header.
+     *
+     * @return a CSV importer
+     */
+    public static SongImporter csv() {
+        return new SongImporter(',', false);
+    }
+
+    /**
+     * Returns a SongImporter for tab-separated lines without a header.
+     *
+     * @return a TSV importer
+     */
+    public static SongImporter tsv() {
+        return new SongImporter('\t', false);
+    }
+
+    /**
+     * Imports the songs of a UTF-8 file into a playlist.
+     *
+     * @param playlist the playlist to add the songs to
+     * @param file     the file to read
+     * @return the report of the import
+     * @throws IOException if the file cannot be read
+     */
+    public ImportReport importInto(Playlist playlist, Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importInto(playlist, reader);
+        }
+    }
+
+    /**
+     * Imports the songs read from a reader into a playlist. The reader is not closed.
+     *
+     * @param playlist the playlist to add the songs to
+     * @param reader   the reader to read the lines from
+     * @return the report of the import
+     * @throws IOException if reading fails; the songs read before stay in the playlist
+     */
+    public ImportReport importInto(Playlist playlist, Reader reader) throws IOException {
+        LineParser lines = new LineParser(new BufferedReader(reader));
+        List<Integer> duplicateLines = new ArrayList<>();
+        try {
+            int added = playlist.addAll(() -> lines, song -> duplicateLines.add(lines.lineNumber));
+            return new ImportReport(added, duplicateLines, lines.errors);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Reads a song from a line.
+     *
+     * @param line the line to read
+     * @return the song
+     * @throws IllegalArgumentException if the line does not hold a song
+     */
+    Song parse(String line) {
+        List<String> fields = split(line);
+        if (fields.size() != FIELDS)
+            throw new IllegalArgumentException("expected " + FIELDS + " fields, found " + fields.size());
+        return new Song(fields.get(0), fields.get(1), parseGenre(fields.get(2)), Song.parseDuration(fields.get(3)));
+    }
+
+    /**
+     * Reads a genre by its name, in any case.
+     */
+    private static Song.Genre parseGenre(String genre) {
+        if (genre.isEmpty() || genre.equals("null"))
+            return null;
+        try {
+            return Song.Genre.valueOf(genre.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("unknown genre: " + genre);
+        }
+    }
+
+    /**
+     * Splits a line into its fields, removing the spaces around them and the quotes enclosing them.
+     */
+    private List<String> split(String line) {
+        List<String> fields = new ArrayList<>(FIELDS);
+        int i = 0;
+        while (true) {
+            while (i < line.length() && line.charAt(i) == ' ')
+                i++;
+            StringBuilder field = new StringBuilder();
+            if (i < line.length() && line.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= line.length())
+                        throw new IllegalArgumentException("unterminated quoted field");
+                    char c = line.charAt(i++);
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i < line.length() && line.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                while (i < line.length() && line.charAt(i) == ' ')
+                    i++;
+                if (i < line.length() && line.charAt(i) != delimiter)
+                    throw new IllegalArgumentException("text after quoted field");
+                fields.add(field.toString());
+            } else {
+                int end = line.indexOf(delimiter, i);
+                if (end < 0)
+                    end = line.length();
+                fields.add(line.substring(i, end).trim());
+                i = end;
+            }
+            if (i >= line.length())
+                return fields;
+            i++;
+        }
+    }
+
+    /**
+     * The LineParser class is an iterator over the songs of the lines of a reader, reading a line only
+     * when the next song is asked for. Blank lines are skipped, and lines that cannot be read as songs
+     * are recorded as errors and skipped.
+     */
+    private class LineParser implements Iterator<Song> {
+
+        private final BufferedReader reader;
+        private final List<String> errors = new ArrayList<>();
+        private int lineNumber;
+        private Song nextSong;
+
+        /**
+         * Constructs a LineParser reading from the given reader.
+         *
+         * @param reader the reader to read the lines from
+         */
+        LineParser(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextSong != null)
+                return true;
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    if ((lineNumber == 1 && skipHeader) || line.isBlank())
+                        continue;
+                    try {
+                        nextSong = parse(line);
+                        return true;
+                    } catch (IllegalArgumentException e) {
+                        errors.add("line " + lineNumber + ": " + e.getMessage());
+                    }
+                }
+                return false;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public Song next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            Song song = nextSong;
+            nextSong = null;
+            return song;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+/**
+ * The SongListener interface is notified when the genre or duration of a song changes, so that
+ * structures ordering or grouping songs by these fields can move the song rather than rebuild themselves.
+ * Listeners are registered with {@link Song#addListener(java.lang.ref.Reference)}.
+ * The listeners registered once the song has notified the start of a change are the ones told
+ * about its end: a listener that unregisters in between is not, and one that registers in between is,
+ * so it must then take the song as it was out of its structures itself.
+ */
+interface SongListener {
+
+    /**
+     * Called before the genre or duration of a song changes, while it still holds its old values.
+     *
+     * @param song the song about to change
+     */
+    void beforeChange(Song song);
+
+    /**
+     * Called after the genre or duration of a song changed.
+     *
+     * @param song the song that changed
+     */
+    void afterChange(Song song);
+}
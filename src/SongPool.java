@@ -0,0 +1,111 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The SongPool class is a registry of canonical songs and strings, to be shared by many playlists.
+ * Equal songs, names and artists obtained through the same pool are the same instance, so they are
+ * stored once however many playlists hold them, and comparing them is an identity check.
+ * Names and artists are also given int ids, which columnar playlists built on the pool store
+ * and compare instead of the strings.
+ * Songs and strings stay in the pool for as long as the pool itself is reachable.
+ */
+public class SongPool {
+
+    private final StringDictionary names = new StringDictionary();
+    private final StringDictionary artists = new StringDictionary();
+    private final Map<Song, Song> songs = new HashMap<>();
+
+    /**
+     * Returns the canonical song with the given name and artist, creating it if the pool has none.
+     * A song is identified by its name and artist only, so when the pool already holds one,
+     * it is returned as it is and the given genre and duration are ignored.
+     *
+     * @param name     the name of the song
+     * @param artist   the artist of the song
+     * @param genre    the genre of a new song
+     * @param duration the duration of a new song in seconds
+     * @return the canonical song
+     */
+    public Song song(String name, String artist, Song.Genre genre, int duration) {
+        return canonical(new Song(name, artist, genre, duration));
+    }
+
+    /**
+     * Returns the canonical song equal to the given one, registering the given song if the pool has none.
+     * A song is registered under canonical copies of its name and artist.
+     * As songs are equal by name and artist, the canonical song may have another genre and duration
+     * than the given one; it keeps its own.
+     *
+     * @param song the song to look up
+     * @return the canonical song
+     */
+    public Song canonical(Song song) {
+        Song canonical = songs.get(song);
+        if (canonical != null)
+            return canonical;
+        String name = name(song.getName());
+        String artist = artist(song.getArtist());
+        if (name != song.getName() || artist != song.getArtist())
+            song = new Song(name, artist, song.getGenre(), song.getDuration());
+        songs.put(song, song);
+        return song;
+    }
+
+    /**
+     * Returns the canonical instance of a song name.
+     *
+     * @param name the name
+     * @return the canonical string equal to the name
+     */
+    public String name(String name) {
+        return names.decode(names.encode(name));
+    }
+
+    /**
+     * Returns the canonical instance of an artist.
+     *
+     * @param artist the artist
+     * @return the canonical string equal to the artist
+     */
+    public String artist(String artist) {
+        return artists.decode(artists.encode(artist));
+    }
+
+    /**
+     * Returns the canonical instance of an artist without adding it to the pool.
+     *
+     * @param artist the artist
+     * @return the canonical string equal to the artist, or the artist itself if the pool has none
+     */
+    String knownArtist(String artist) {
+        int id = artists.idOf(artist);
+        return (id < 0) ? artist : artists.decode(id);
+    }
+
+    /**
+     * Returns the number of distinct songs in the pool.
+     *
+     * @return the number of canonical songs
+     */
+    public int size() {
+        return songs.size();
+    }
+
+    /**
+     * Returns the dictionary assigning ids to song names.
+     *
+     * @return the name dictionary
+     */
+    StringDictionary names() {
+        return names;
+    }
+
+    /**
+     * Returns the dictionary assigning ids to artists.
+     *
+     * @return the artist dictionary
+     */
+    StringDictionary artists() {
+        return artists;
+    }
+}
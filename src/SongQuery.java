@@ -0,0 +1,257 @@
+import java.util.Objects;
+
+/**
+ * The SongQuery class describes which songs of a playlist to visit and in what order:
+ * an artist, genre and maximum duration to filter by, a scanning order, and the page of the
+ * matching songs to visit, given by the number of songs to skip and a limit on the number to visit.
+ * The {@link ScanningOrder#SHUFFLE} order is given by a seed, so the same query visits the songs of
+ * a playlist in the same shuffled order every time it runs.
+ * A query is immutable; each of its with methods returns a new query, so one query can be
+ * run by many threads at once, and different queries can run on the same playlist without
+ * changing the filters set on it.
+ */
+public final class SongQuery {
+
+    /**
+     * The query that visits all the songs in adding order.
+     */
+    public static final SongQuery ALL = new SongQuery(null, null, Integer.MAX_VALUE, ScanningOrder.ADDING,
+            0, Integer.MAX_VALUE, 0);
+
+    private final String artist;
+    private final Song.Genre genre;
+    private final int maxDuration;
+    private final ScanningOrder order;
+    private final int offset;
+    private final int limit;
+    private final long seed;
+
+    private SongQuery(String artist, Song.Genre genre, int maxDuration, ScanningOrder order, int offset, int limit,
+                      long seed) {
+        this.artist = artist;
+        this.genre = genre;
+        this.maxDuration = maxDuration;
+        this.order = order;
+        this.offset = offset;
+        this.limit = limit;
+        this.seed = seed;
+    }
+
+    /**
+     * Returns a query like this one that only visits the songs of the given artist.
+     *
+     * @param artist the artist to filter by, or null for any artist
+     * @return the new query
+     */
+    public SongQuery withArtist(String artist) {
+        return new SongQuery(artist, genre, maxDuration, order, offset, limit, seed);
+    }
+
+    /**
+     * Returns a query like this one that only visits the songs of the given genre.
+     *
+     * @param genre the genre to filter by, or null for any genre
+     * @return the new query
+     */
+    public SongQuery withGenre(Song.Genre genre) {
+        return new SongQuery(artist, genre, maxDuration, order, offset, limit, seed);
+    }
+
+    /**
+     * Returns a query like this one that only visits the songs that last at most the given duration.
+     *
+     * @param maxDuration the maximum duration in seconds
+     * @return the new query
+     */
+    public SongQuery withMaxDuration(int maxDuration) {
+        return new SongQuery(artist, genre, maxDuration, order, offset, limit, seed);
+    }
+
+    /**
+     * Returns a query like this one that visits the songs in the given scanning order.
+     *
+     * @param order the scanning order
+     * @return the new query
+     */
+    public SongQuery withOrder(ScanningOrder order) {
+        return new SongQuery(artist, genre, maxDuration, Objects.requireNonNull(order), offset, limit, seed);
+    }
+
+    /**
+     * Returns a query like this one that skips the given number of matching songs before the first
+     * one it visits, as when going to a later page of the results.
+     *
+     * @param offset the number of songs to skip
+     * @return the new query
+     * @throws IllegalArgumentException if the offset is negative
+     */
+    public SongQuery withOffset(int offset) {
+        if (offset < 0)
+            throw new IllegalArgumentException("negative offset: " + offset);
+        return new SongQuery(artist, genre, maxDuration, order, offset, limit, seed);
+    }
+
+    /**
+     * Returns a query like this one that visits at most the given number of songs.
+     * Ordered queries with a small limit select their songs without sorting all the matching ones.
+     *
+     * @param limit the maximum number of songs
+     * @return the new query
+     * @throws IllegalArgumentException if the limit is negative
+     */
+    public SongQuery withLimit(int limit) {
+        if (limit < 0)
+            throw new IllegalArgumentException("negative limit: " + limit);
+        return new SongQuery(artist, genre, maxDuration, order, offset, limit, seed);
+    }
+
+    /**
+     * Returns a query like this one whose {@link ScanningOrder#SHUFFLE} order is given by the given seed.
+     *
+     * @param seed the seed of the shuffled order
+     * @return the new query
+     */
+    public SongQuery withSeed(long seed) {
+        return new SongQuery(artist, genre, maxDuration, order, offset, limit, seed);
+    }
+
+    /**
+     * Returns the artist the query filters by.
+     *
+     * @return the artist, or null for any artist
+     */
+    public String getArtist() {
+        return artist;
+    }
+
+    /**
+     * Returns the genre the query filters by.
+     *
+     * @return the genre, or null for any genre
+     */
+    public Song.Genre getGenre() {
+        return genre;
+    }
+
+    /**
+     * Returns the maximum duration the query filters by.
+     *
+     * @return the maximum duration in seconds
+     */
+    public int getMaxDuration() {
+        return maxDuration;
+    }
+
+    /**
+     * Returns the scanning order of the query.
+     *
+     * @return the scanning order
+     */
+    public ScanningOrder getOrder() {
+        return order;
+    }
+
+    /**
+     * Returns the number of matching songs the query skips.
+     *
+     * @return the offset of the first song visited
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the maximum number of songs the query visits.
+     *
+     * @return the limit, Integer.MAX_VALUE if there is none
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Returns the seed of the shuffled order of the query.
+     *
+     * @return the seed, 0 unless another one was set
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the number of matching songs, from the first one in the scanning order, that the query
+     * has to find in order to visit its page: the offset plus the limit.
+     *
+     * @return the number of leading songs the query needs, Integer.MAX_VALUE if there is no limit
+     */
+    int getEnd() {
+        return (int) Math.min(Integer.MAX_VALUE, (long) offset + limit);
+    }
+
+    /**
+     * Returns the query with the filters and order of this one that visits all the matching songs.
+     *
+     * @return this query without its offset and limit
+     */
+    SongQuery unpaged() {
+        if (offset == 0 && limit == Integer.MAX_VALUE)
+            return this;
+        return new SongQuery(artist, genre, maxDuration, order, 0, Integer.MAX_VALUE, seed);
+    }
+
+    /**
+     * Checks whether a song passes the filters of the query.
+     *
+     * @param song the song to check
+     * @return true if the song passes all the filters, false otherwise
+     */
+    public boolean matches(Song song) {
+        return SongStore.matches(song, artist, genre, maxDuration);
+    }
+
+    /**
+     * Returns a string representation of the query.
+     *
+     * @return a string representation of the query
+     */
+    @Override
+    public String toString() {
+        return "SongQuery[artist=" + artist + ", genre=" + genre + ", maxDuration=" + maxDuration +
+                ", order=" + order + ", offset=" + offset + ", limit=" + limit + ", seed=" + seed + "]";
+    }
+
+    /**
+     * Checks if the query is equal to another object.
+     * Two queries are equal if they have the same filters, order, offset, limit and seed.
+     *
+     * @param other the object to compare
+     * @return true if the objects are equal, false otherwise
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof SongQuery))
+            return false;
+        SongQuery otherQuery = (SongQuery) other;
+        return Objects.equals(artist, otherQuery.artist) && genre == otherQuery.genre &&
+                maxDuration == otherQuery.maxDuration && order == otherQuery.order &&
+                offset == otherQuery.offset && limit == otherQuery.limit && seed == otherQuery.seed;
+    }
+
+    /**
+     * Computes the hash code of the query.
+     *
+     * @return the hash code of the query
+     */
+    @Override
+    public int hashCode() {
+        int result = 17;
+        result = 31 * result + Objects.hashCode(artist);
+        result = 31 * result + Objects.hashCode(genre);
+        result = 31 * result + maxDuration;
+        result = 31 * result + order.hashCode();
+        result = 31 * result + offset;
+        result = 31 * result + limit;
+        result = 31 * result + Long.hashCode(seed);
+        return result;
+    }
+}
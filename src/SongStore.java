@@ -0,0 +1,1020 @@
+import java.lang.ref.WeakReference;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * The SongStore class holds the songs of a Playlist in adding order, together with the indexes
+ * used to find, filter and order them.
+ * A store may be shared by a playlist and its clones. It then keeps track of which playlist owns
+ * the song objects it holds, and hands out a store of their own to the other playlists once they
+ * need one (see {@link #forReading(Playlist)} and {@link #forWriting(Playlist)}). The playlists
+ * holding the store are only referenced weakly, so a clone that is dropped stops sharing it.
+ * The store listens to the songs it holds: when the genre or duration of one of them changes,
+ * the song is moved within the genre and duration indexes instead of the indexes being rebuilt.
+ * It also keeps the total duration of its songs, and their number and total duration per genre,
+ * up to date as songs are added, removed and changed.
+ */
+class SongStore implements Iterable<Song>, SongListener {
+
+    /**
+     * A filter is considered selective, and is answered from its index, when it leaves at most
+     * one in this many songs of the store.
+     */
+    private static final int SELECTIVITY = 4;
+
+    /**
+     * The slot of the per-genre aggregates counting the songs without a genre.
+     */
+    private static final int NO_GENRE = Song.Genre.values().length;
+
+    private List<Song> songs;
+    private Map<Song, Integer> positions;
+    private int removedCount;
+    private int hash;
+    private long totalDuration;
+    private int[] genreCounts;
+    private long[] genreDurations;
+    private Comparator<Song> addingOrder;
+    private Comparator<Song> nameOrder;
+    private Comparator<Song> durationOrder;
+    private TreeSet<Song> nameIndex;
+    private TreeSet<Song> durationIndex;
+    private int durationScans;
+    private Map<String, Set<Song>> artistIndex;
+    private EnumMap<Song.Genre, BitSet> genreIndex;
+    private int genreScans;
+
+    private final WeakReference<SongListener> listener = new WeakReference<>(this);
+    private final List<WeakReference<QueryCache>> caches = new CopyOnWriteArrayList<>();
+
+    private Playlist owner;
+    private boolean ownerHolds;
+    private final List<WeakReference<Playlist>> holders = new ArrayList<>();
+    private boolean shared;
+
+    /**
+     * Constructs an empty SongStore held by the given playlist, which owns the songs added to it.
+     *
+     * @param owner the playlist holding the store
+     */
+    SongStore(Playlist owner) {
+        this.owner = owner;
+        this.ownerHolds = true;
+        this.holders.add(new WeakReference<>(owner));
+        clear();
+    }
+
+    /**
+     * Returns the number of songs in the store.
+     *
+     * @return the number of songs in the store
+     */
+    int size() {
+        return positions.size();
+    }
+
+    /**
+     * Checks whether the store contains a song equal to the given one.
+     *
+     * @param song the song to look for
+     * @return true if an equal song is in the store, false otherwise
+     */
+    boolean contains(Song song) {
+        return positions.containsKey(song);
+    }
+
+    /**
+     * Returns the song of the store equal to the given one.
+     *
+     * @param song the song to look for
+     * @return the song of the store, or null if there is none
+     */
+    Song member(Song song) {
+        Integer position = positions.get(song);
+        return (position == null) ? null : songs.get(position);
+    }
+
+    /**
+     * Returns the sum of the hash codes of the songs in the store.
+     *
+     * @return the hash code of the stored songs
+     */
+    int hash() {
+        return hash;
+    }
+
+    /**
+     * Returns the sum of the durations of the songs in the store.
+     *
+     * @return the total duration in seconds
+     */
+    long totalDuration() {
+        return totalDuration;
+    }
+
+    /**
+     * Returns the number of songs of the store with the given genre.
+     *
+     * @param genre the genre, or null for the songs without one
+     * @return the number of songs with the genre
+     */
+    int genreCount(Song.Genre genre) {
+        return genreCounts[slot(genre)];
+    }
+
+    /**
+     * Returns the sum of the durations of the songs of the store with the given genre.
+     *
+     * @param genre the genre, or null for the songs without one
+     * @return the total duration of the songs with the genre, in seconds
+     */
+    long genreDuration(Song.Genre genre) {
+        return genreDurations[slot(genre)];
+    }
+
+    /**
+     * Returns the sum of the durations of the songs of the store by the given artist,
+     * adding up the songs of the artist index.
+     *
+     * @param artist the artist
+     * @return the total duration of the songs by the artist, in seconds
+     */
+    long artistDuration(String artist) {
+        long duration = 0;
+        for (Song song : artistIndex.getOrDefault(artist, Collections.emptySet()))
+            duration += song.getDuration();
+        return duration;
+    }
+
+    /**
+     * Returns the shortest or longest song of the store, from the ends of the duration index.
+     * Reading the ends does not open a scan, so it does not make the next song change copy the index.
+     *
+     * @param longest whether to return the longest song rather than the shortest
+     * @return the song, or null if the store is empty
+     */
+    synchronized Song durationExtreme(boolean longest) {
+        if (positions.isEmpty())
+            return null;
+        if (durationIndex == null)
+            durationIndex = sortedIndex(durationOrder);
+        return longest ? durationIndex.last() : durationIndex.first();
+    }
+
+    /**
+     * Adds a song to the aggregates of the store, or takes it out of them.
+     *
+     * @param song the song
+     * @param sign 1 to add the song, -1 to take it out
+     */
+    private void count(Song song, int sign) {
+        int slot = slot(song.getGenre());
+        totalDuration += sign * (long) song.getDuration();
+        genreCounts[slot] += sign;
+        genreDurations[slot] += sign * (long) song.getDuration();
+    }
+
+    private static int slot(Song.Genre genre) {
+        return (genre == null) ? NO_GENRE : genre.ordinal();
+    }
+
+    /**
+     * Adds a song at the end of the store.
+     *
+     * @param song the song to add
+     * @throws SongAlreadyExistsException if an equal song is already in the store
+     */
+    void add(Song song) {
+        int position = songs.size();
+        if (positions.putIfAbsent(song, position) != null)
+            throw new SongAlreadyExistsException();
+        songs.add(song);
+        song.addListener(listener);
+        hash += song.hashCode();
+        count(song, 1);
+        if (nameIndex != null)
+            nameIndex.add(song);
+        if (durationIndex != null)
+            durationIndex.add(song);
+        artistIndex.computeIfAbsent(song.getArtist(), artist -> new LinkedHashSet<>()).add(song);
+        if (genreIndex != null && song.getGenre() != null)
+            genreIndex.get(song.getGenre()).set(position);
+    }
+
+    /**
+     * Adds songs at the end of the store, in the order they are given, skipping the songs that are
+     * already in the store or given before.
+     * The songs are only indexed by name, duration and genre once all of them are added: when there are
+     * fewer of them than songs already in the store they are added to the existing indexes, and otherwise
+     * the indexes are dropped and rebuilt at once when they are next needed.
+     * If the songs cannot all be taken from the iterable, the ones taken before stay in the store and
+     * the indexes are dropped, so that they are rebuilt with them.
+     *
+     * @param added       the songs to add
+     * @param onDuplicate the consumer of the skipped songs
+     * @return the number of songs added
+     */
+    int addAll(Iterable<Song> added, Consumer<Song> onDuplicate) {
+        int sizeBefore = positions.size();
+        int start = songs.size();
+        try {
+            for (Song song : added) {
+                if (positions.putIfAbsent(song, songs.size()) != null) {
+                    onDuplicate.accept(song);
+                    continue;
+                }
+                songs.add(song);
+                song.addListener(listener);
+                hash += song.hashCode();
+                count(song, 1);
+                artistIndex.computeIfAbsent(song.getArtist(), artist -> new LinkedHashSet<>()).add(song);
+            }
+        } catch (RuntimeException | Error e) {
+            dropIndexes();
+            throw e;
+        }
+        int count = positions.size() - sizeBefore;
+        if (count >= sizeBefore) {
+            dropIndexes();
+            return count;
+        }
+        for (int position = start; position < songs.size(); position++) {
+            Song song = songs.get(position);
+            if (nameIndex != null)
+                nameIndex.add(song);
+            if (durationIndex != null)
+                durationIndex.add(song);
+            if (genreIndex != null && song.getGenre() != null)
+                genreIndex.get(song.getGenre()).set(position);
+        }
+        return count;
+    }
+
+    /**
+     * Drops the name, duration and genre indexes, which are rebuilt from the songs when they are next needed.
+     */
+    private void dropIndexes() {
+        nameIndex = null;
+        durationIndex = null;
+        durationScans = 0;
+        genreIndex = null;
+        genreScans = 0;
+    }
+
+    /**
+     * Removes a song from the store.
+     * The song's slot is left empty and reclaimed once more than half of the slots are empty,
+     * so removal does not shift the songs that were added after it.
+     *
+     * @param song the song to remove
+     * @return true if the song was removed, false otherwise
+     */
+    boolean remove(Song song) {
+        Integer position = positions.get(song);
+        if (position == null)
+            return false;
+        Song member = songs.get(position);
+        member.removeListener(listener);
+        hash -= member.hashCode();
+        count(member, -1);
+        if (nameIndex != null)
+            nameIndex.remove(member);
+        if (durationIndex != null)
+            durationIndex.remove(member);
+        Set<Song> byArtist = artistIndex.get(member.getArtist());
+        byArtist.remove(member);
+        if (byArtist.isEmpty())
+            artistIndex.remove(member.getArtist());
+        if (genreIndex != null && member.getGenre() != null)
+            genreIndex.get(member.getGenre()).clear(position);
+        positions.remove(song);
+        songs.set(position, null);
+        removedCount++;
+        if (removedCount > songs.size() / 2)
+            compact();
+        return true;
+    }
+
+    /**
+     * Returns an iterator over the songs in the store, in adding order.
+     *
+     * @return an iterator over the songs in the store
+     */
+    @Override
+    public Iterator<Song> iterator() {
+        return songs.stream().filter(song -> song != null).iterator();
+    }
+
+    /**
+     * Drops the empty slots left by removed songs, keeping the adding order of the remaining songs.
+     */
+    private void compact() {
+        List<Song> compacted = new ArrayList<>(positions.size());
+        for (Song song : songs) {
+            if (song != null) {
+                positions.put(song, compacted.size());
+                compacted.add(song);
+            }
+        }
+        songs = compacted;
+        removedCount = 0;
+        genreIndex = null;
+        genreScans = 0;
+    }
+
+    /**
+     * Resets the store to an empty one, with new (empty) indexes that break ties by the slots
+     * in the new positions map.
+     */
+    private void clear() {
+        Map<Song, Integer> positions = new HashMap<>();
+        this.songs = new ArrayList<>();
+        this.positions = positions;
+        removedCount = 0;
+        hash = 0;
+        totalDuration = 0;
+        genreCounts = new int[NO_GENRE + 1];
+        genreDurations = new long[NO_GENRE + 1];
+        addingOrder = Comparator.comparingInt(positions::get);
+        nameOrder = Comparator.comparing(Song::getName).thenComparing(addingOrder);
+        durationOrder = Comparator.comparingInt(Song::getDuration).thenComparing(addingOrder);
+        nameIndex = new TreeSet<>(nameOrder);
+        durationIndex = null;
+        durationScans = 0;
+        artistIndex = new HashMap<>();
+        genreIndex = null;
+        genreScans = 0;
+    }
+
+    /**
+     * Returns the songs of the store sorted by name, building the index if it was dropped by a bulk add.
+     *
+     * @return the name index
+     */
+    private synchronized TreeSet<Song> nameIndex() {
+        if (nameIndex == null)
+            nameIndex = sortedIndex(nameOrder);
+        return nameIndex;
+    }
+
+    /**
+     * Builds an index of the songs of the store sorted by the given comparator.
+     * The songs are sorted in an array first and the tree is then built from it in linear time (see
+     * {@link SortedArray}), which is faster than inserting them one by one.
+     *
+     * @param order the comparator of the index
+     * @return the new index
+     */
+    private TreeSet<Song> sortedIndex(Comparator<Song> order) {
+        Song[] sorted = new Song[positions.size()];
+        int count = 0;
+        for (Song song : songs) {
+            if (song != null)
+                sorted[count++] = song;
+        }
+        Arrays.sort(sorted, order);
+        TreeSet<Song> index = new TreeSet<>(order);
+        index.addAll(new SortedArray(sorted, order));
+        return index;
+    }
+
+    /**
+     * Returns the songs of the store sorted by duration, building the index if it was dropped.
+     * Concurrent scans may both find the index missing, so it is built under the store's lock.
+     *
+     * @return the duration index
+     */
+    private synchronized TreeSet<Song> durationIndex() {
+        if (durationIndex == null)
+            durationIndex = sortedIndex(durationOrder);
+        return durationIndex;
+    }
+
+    /**
+     * Returns the slots of the songs of each genre, building the index if it was dropped,
+     * under the store's lock like the duration index.
+     *
+     * @return the genre index
+     */
+    private synchronized EnumMap<Song.Genre, BitSet> genreIndex() {
+        if (genreIndex == null) {
+            genreIndex = new EnumMap<>(Song.Genre.class);
+            for (Song.Genre genre : Song.Genre.values())
+                genreIndex.put(genre, new BitSet());
+            for (int i = 0; i < songs.size(); i++) {
+                Song song = songs.get(i);
+                if (song != null && song.getGenre() != null)
+                    genreIndex.get(song.getGenre()).set(i);
+            }
+        }
+        return genreIndex;
+    }
+
+    /**
+     * Hands the songs of the store sorted by duration out to a scan that iterates over them lazily.
+     * The index counts as in use until the scan ends, so that a song change meanwhile copies it rather
+     * than changing it under the scan.
+     *
+     * @return a scan over the duration index
+     */
+    private synchronized IndexScan scanDurationIndex() {
+        durationScans++;
+        return new IndexScan(durationIndex().iterator(), durationIndex);
+    }
+
+    /**
+     * Hands the songs of a genre out to a scan that iterates over them lazily, in adding order,
+     * with the genre index in use until the scan ends like the duration index.
+     *
+     * @param genre the genre
+     * @return a scan over the songs of the genre
+     */
+    private synchronized IndexScan scanGenreIndex(Song.Genre genre) {
+        genreScans++;
+        return new IndexScan(genreIndex().get(genre).stream().mapToObj(songs::get).iterator(), genreIndex);
+    }
+
+    /**
+     * Ends a scan returned by {@link #candidates}, if it was still iterating over an index, so that
+     * song changes no longer copy the index for it. Scans that go through all their songs end by
+     * themselves; a scan that is dropped without being ended costs one copy of the index, at the next
+     * song change.
+     *
+     * @param candidates the candidates of the scan
+     */
+    void endScan(Iterator<Song> candidates) {
+        if (candidates instanceof IndexScan)
+            ((IndexScan) candidates).end();
+    }
+
+    private synchronized void endScan(Object index) {
+        if (index == durationIndex && durationScans > 0)
+            durationScans--;
+        else if (index == genreIndex && genreScans > 0)
+            genreScans--;
+    }
+
+    /**
+     * Takes a song of the store out of the duration and genre indexes before its genre or duration
+     * changes. If the store is shared, its holders are first kept apart (see {@link #separateFromOwner()}),
+     * after which this store may hold a copy of the song instead of the song itself. The store the
+     * owner moves to already counts the song, so it takes the song out as well; it is told about the
+     * end of the change as a listener of the song registered before then.
+     *
+     * @param song the song about to change
+     */
+    @Override
+    public synchronized void beforeChange(Song song) {
+        if (!holdsInstance(song))
+            return;
+        if (shared) {
+            SongStore ownerStore = separateFromOwner();
+            if (ownerStore != null)
+                ownerStore.beforeChange(song);
+            if (!holdsInstance(song))
+                return;
+        }
+        detachIndexes();
+        count(song, -1);
+        if (durationIndex != null)
+            durationIndex.remove(song);
+        if (genreIndex != null && song.getGenre() != null)
+            genreIndex.get(song.getGenre()).clear(positions.get(song));
+        notifyCaches(song);
+    }
+
+    /**
+     * Puts a song of the store back into the duration and genre indexes after it changed.
+     *
+     * @param song the song that changed
+     */
+    @Override
+    public synchronized void afterChange(Song song) {
+        if (!holdsInstance(song))
+            return;
+        count(song, 1);
+        if (durationIndex != null)
+            durationIndex.add(song);
+        if (genreIndex != null && song.getGenre() != null)
+            genreIndex.get(song.getGenre()).set(positions.get(song));
+        notifyCaches(song);
+    }
+
+    /**
+     * Replaces the duration and genre indexes with copies if scans are still iterating over them,
+     * which keep going over the old ones. A tree is copied from its sorted order in linear time.
+     */
+    private void detachIndexes() {
+        if (durationIndex != null && durationScans > 0) {
+            durationIndex = new TreeSet<>(durationIndex);
+            durationScans = 0;
+        }
+        if (genreIndex != null && genreScans > 0) {
+            EnumMap<Song.Genre, BitSet> copy = new EnumMap<>(Song.Genre.class);
+            for (Map.Entry<Song.Genre, BitSet> entry : genreIndex.entrySet())
+                copy.put(entry.getKey(), (BitSet) entry.getValue().clone());
+            genreIndex = copy;
+            genreScans = 0;
+        }
+    }
+
+    /**
+     * Registers a query cache whose results were computed on this store, so that it is told which
+     * songs of the store change. The store only holds the cache weakly.
+     *
+     * @param cache the cache to register
+     */
+    void addCache(QueryCache cache) {
+        caches.removeIf(reference -> reference.get() == null);
+        caches.add(new WeakReference<>(cache));
+    }
+
+    /**
+     * Unregisters a query cache registered with {@link #addCache(QueryCache)}.
+     *
+     * @param cache the cache to unregister
+     */
+    void removeCache(QueryCache cache) {
+        caches.removeIf(reference -> reference.get() == null || reference.get() == cache);
+    }
+
+    private void notifyCaches(Song song) {
+        for (WeakReference<QueryCache> reference : caches) {
+            QueryCache cache = reference.get();
+            if (cache != null)
+                cache.songChanged(song);
+        }
+    }
+
+    /**
+     * Chooses the songs a scan has to look at, in the given scanning order.
+     * The most selective of the artist and genre indexes is used when one of these filters is set,
+     * then the duration index for a selective duration filter, and otherwise the index of the
+     * scanning order itself. The returned songs may still include songs that do not pass the filters,
+     * as well as null for the empty slots of removed songs.
+     * In the shuffled order, the slots of the store, or the few songs of a selective filter, are visited
+     * in the order of a {@link ShufflePermutation}.
+     *
+     * @param artist      the artist to filter by, or null
+     * @param genre       the genre to filter by, or null
+     * @param maxDuration the maximum duration to filter by
+     * @param order       the scanning order
+     * @param end         the number of leading matching songs the scan needs, Integer.MAX_VALUE for all of them
+     * @param seed        the seed of the shuffled order
+     * @return an iterator over the candidate songs, in the scanning order
+     */
+    Iterator<Song> candidates(String artist, Song.Genre genre, int maxDuration, ScanningOrder order, int end,
+                              long seed) {
+        int selective = positions.size() / SELECTIVITY;
+        Collection<Song> byArtist = null;
+        BitSet byGenre = null;
+        if (artist != null)
+            byArtist = artistIndex.getOrDefault(artist, Collections.emptySet());
+        if (genre != null)
+            byGenre = genreIndex().get(genre);
+
+        Iterator<Song> candidates = null;
+        int count = 0;
+        if (byArtist != null && (byGenre == null || byArtist.size() <= byGenre.cardinality())) {
+            candidates = byArtist.iterator();
+            count = byArtist.size();
+        } else if (byGenre != null) {
+            if (order == ScanningOrder.ADDING)
+                return scanGenreIndex(genre);
+            candidates = byGenre.stream().mapToObj(songs::get).iterator();
+            count = byGenre.cardinality();
+        }
+        if (candidates != null && order == ScanningOrder.ADDING)
+            return candidates;
+        if (candidates != null && count <= selective)
+            return sorted(candidates, artist, genre, maxDuration, order, end, seed);
+
+        if (maxDuration != Integer.MAX_VALUE && order != ScanningOrder.DURATION) {
+            List<Song> inRange = new ArrayList<>();
+            for (Song song : durationIndex()) {
+                if (song.getDuration() > maxDuration)
+                    return sorted(inRange.iterator(), artist, genre, maxDuration, order, end, seed);
+                if (inRange.size() == selective)
+                    break;
+                inRange.add(song);
+            }
+        }
+
+        switch (order) {
+            case NAME:
+                return nameIndex().iterator();
+            case DURATION:
+                return scanDurationIndex();
+            case SHUFFLE:
+                return shuffled(songs, seed);
+            case ADDING:
+            default:
+                return songs.iterator();
+        }
+    }
+
+    /**
+     * Collects the candidate songs that pass the filters and sorts them by the given scanning order.
+     * When only the first few of them are needed, these are kept in a bounded heap instead, which takes
+     * O(n log k) rather than sorting all n matching songs.
+     *
+     * @param candidates  the songs to filter
+     * @param artist      the artist to filter by, or null
+     * @param genre       the genre to filter by, or null
+     * @param maxDuration the maximum duration to filter by
+     * @param order       the scanning order
+     * @param end         the number of leading matching songs needed
+     * @param seed        the seed of the shuffled order
+     * @return an iterator over the (leading) matching songs, in the scanning order
+     */
+    private Iterator<Song> sorted(Iterator<Song> candidates, String artist, Song.Genre genre, int maxDuration,
+                                  ScanningOrder order, int end, long seed) {
+        Comparator<Song> comparator = comparator(order);
+        if (end == 0)
+            return Collections.emptyIterator();
+        if (end == Integer.MAX_VALUE || order == ScanningOrder.SHUFFLE) {
+            List<Song> matching = new ArrayList<>();
+            while (candidates.hasNext()) {
+                Song song = candidates.next();
+                if (matches(song, artist, genre, maxDuration))
+                    matching.add(song);
+            }
+            if (order == ScanningOrder.SHUFFLE)
+                return shuffled(matching, seed);
+            matching.sort(comparator);
+            return matching.iterator();
+        }
+
+        PriorityQueue<Song> leading = new PriorityQueue<>(Math.min(end, 64) + 1, comparator.reversed());
+        while (candidates.hasNext()) {
+            Song song = candidates.next();
+            if (!matches(song, artist, genre, maxDuration))
+                continue;
+            if (leading.size() < end) {
+                leading.add(song);
+            } else if (comparator.compare(song, leading.peek()) < 0) {
+                leading.poll();
+                leading.add(song);
+            }
+        }
+        Song[] matching = new Song[leading.size()];
+        for (int i = matching.length - 1; i >= 0; i--)
+            matching[i] = leading.poll();
+        return Arrays.asList(matching).iterator();
+    }
+
+    /**
+     * Returns an iterator over songs in the order of the permutation given by a seed,
+     * finding each song only when it is reached.
+     *
+     * @param songs the songs to shuffle
+     * @param seed  the seed of the permutation
+     * @return an iterator over the shuffled songs
+     */
+    private static Iterator<Song> shuffled(List<Song> songs, long seed) {
+        return new ShuffledIterator(songs, new ShufflePermutation(songs.size(), seed));
+    }
+
+    /**
+     * Returns the comparator that sorts the songs of the store by the given scanning order.
+     *
+     * @param order the scanning order
+     * @return the comparator of the scanning order
+     */
+    private Comparator<Song> comparator(ScanningOrder order) {
+        switch (order) {
+            case NAME:
+                return nameOrder;
+            case DURATION:
+                return durationOrder;
+            case ADDING:
+            default:
+                return addingOrder;
+        }
+    }
+
+    /**
+     * Checks whether a song passes the given filters.
+     *
+     * @param song        the song to check
+     * @param artist      the artist to filter by, or null
+     * @param genre       the genre to filter by, or null
+     * @param maxDuration the maximum duration to filter by
+     * @return true if the song passes all the filters, false otherwise
+     */
+    static boolean matches(Song song, String artist, Song.Genre genre, int maxDuration) {
+        return (artist == null || song.getArtist().equals(artist)) &&
+                (genre == null || song.getGenre() == genre) &&
+                (song.getDuration() <= maxDuration);
+    }
+
+    /**
+     * Registers one more playlist as holding this store, as done by {@link Playlist#clone()}.
+     *
+     * @param holder the playlist now holding the store as well
+     */
+    synchronized void share(Playlist holder) {
+        holders.add(new WeakReference<>(holder));
+        shared = true;
+    }
+
+    /**
+     * Returns the number of playlists holding the store, forgetting the ones that were garbage collected.
+     *
+     * @return the number of holders
+     */
+    private int holders() {
+        holders.removeIf(reference -> reference.get() == null);
+        return holders.size();
+    }
+
+    /**
+     * Forgets a playlist that leaves the store for a store of its own.
+     *
+     * @param holder the playlist leaving the store
+     */
+    private void release(Playlist holder) {
+        for (Iterator<WeakReference<Playlist>> i = holders.iterator(); i.hasNext(); ) {
+            if (i.next().get() == holder) {
+                i.remove();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns a store whose songs the given holder may hand out.
+     * The owner of the songs keeps using this store; any other holder gets its own copy of the songs,
+     * unless it is the last one holding a store whose songs are not owned by anyone.
+     * The holders of a store may be read from different threads, so they are kept track of under
+     * the store's lock, as are the changes of its songs.
+     *
+     * @param holder a playlist holding this store
+     * @return this store, or a new store holding copies of the songs
+     */
+    synchronized SongStore forReading(Playlist holder) {
+        if (owner == holder)
+            return this;
+        return forWriting(holder);
+    }
+
+    /**
+     * Returns a store the given holder may add songs to and remove songs from.
+     * If other playlists hold this store as well, the holder leaves it and gets a new store of its own,
+     * which holds the same songs if the holder owns them and copies of them otherwise.
+     *
+     * @param holder a playlist holding this store
+     * @return this store, or a new store for the holder alone
+     */
+    synchronized SongStore forWriting(Playlist holder) {
+        if (holders() == 1 && (owner == holder || owner == null)) {
+            owner = holder;
+            ownerHolds = true;
+            return this;
+        }
+        release(holder);
+        if (owner == holder)
+            ownerHolds = false;
+        SongStore copy = copy(holder, owner != holder);
+        if (holders.isEmpty())
+            stopListening();
+        return copy;
+    }
+
+    /**
+     * Creates a new store for the given holder with the songs of this store, in the same order.
+     *
+     * @param holder    the playlist that will hold the new store
+     * @param cloneSongs whether the new store gets clones of the songs rather than the songs themselves
+     * @return the new store
+     */
+    private SongStore copy(Playlist holder, boolean cloneSongs) {
+        SongStore copy = new SongStore(holder);
+        for (Song song : songs) {
+            if (song != null)
+                copy.add(cloneSongs ? song.clone() : song);
+        }
+        return copy;
+    }
+
+    /**
+     * Stops listening to the songs of a store that no playlist holds anymore.
+     */
+    private void stopListening() {
+        for (Song song : songs) {
+            if (song != null)
+                song.removeListener(listener);
+        }
+    }
+
+    /**
+     * Checks whether the store holds the given song object itself, rather than an equal one.
+     *
+     * @param song the song to look for
+     * @return true if the song object is in the store, false otherwise
+     */
+    private boolean holdsInstance(Song song) {
+        Integer position = positions.get(song);
+        return position != null && songs.get(position) == song;
+    }
+
+    /**
+     * Called before a song of a shared store changes, to keep its holders apart: the owner of the songs
+     * moves to a store of its own, and this store, still held by the other holders, gets copies of the
+     * songs as they were before the change. The query caches of the other holders are cleared,
+     * since their results hold the songs of the owner.
+     *
+     * @return the store the owner moved to, or null if it did not move
+     */
+    private SongStore separateFromOwner() {
+        shared = false;
+        if (owner == null)
+            return null;
+        SongStore ownerStore = null;
+        if (ownerHolds) {
+            if (holders() == 1)
+                return null;
+            release(owner);
+            ownerStore = copy(owner, false);
+            owner.setStore(ownerStore);
+        }
+        List<Song> owned = songs;
+        stopListening();
+        clear();
+        for (Song song : owned) {
+            if (song != null)
+                add(song.clone());
+        }
+        owner = null;
+        ownerHolds = false;
+        for (WeakReference<QueryCache> reference : caches) {
+            QueryCache cache = reference.get();
+            if (cache != null)
+                cache.clear();
+        }
+        return ownerStore;
+    }
+
+    /**
+     * A scan over the duration or genre index, which ends when it has gone through all of its songs
+     * or when the scan that uses it is ended (see {@link #endScan(Iterator)}).
+     */
+    private class IndexScan implements Iterator<Song> {
+
+        private final Iterator<Song> songs;
+        private final Object index;
+        private boolean open = true;
+
+        IndexScan(Iterator<Song> songs, Object index) {
+            this.songs = songs;
+            this.index = index;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (songs.hasNext())
+                return true;
+            end();
+            return false;
+        }
+
+        @Override
+        public Song next() {
+            return songs.next();
+        }
+
+        void end() {
+            if (open) {
+                open = false;
+                endScan(index);
+            }
+        }
+    }
+
+    /**
+     * An iterator over a list of songs in the order of a permutation of their positions.
+     */
+    private static class ShuffledIterator implements Iterator<Song> {
+
+        private final List<Song> songs;
+        private final ShufflePermutation permutation;
+        private int i;
+
+        ShuffledIterator(List<Song> songs, ShufflePermutation permutation) {
+            this.songs = songs;
+            this.permutation = permutation;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return i < permutation.size();
+        }
+
+        @Override
+        public Song next() {
+            if (i >= permutation.size())
+                throw new NoSuchElementException();
+            return songs.get(permutation.get(i++));
+        }
+    }
+
+    /**
+     * A read-only sorted set over a range of an array that is already sorted by the given comparator,
+     * used to build a TreeSet from the array in linear time (see {@link #sortedIndex(Comparator)}).
+     * This relies on TreeSet.addAll building the tree directly from the sorted iteration when it is
+     * empty and given a SortedSet with the same comparator, which is how the JDK implements it but
+     * not part of its specification; on a JDK that does not, the songs are inserted one by one and
+     * the index is still correct.
+     * The comparators of the store never find two songs equal, so a range view is found by binary search.
+     */
+    private static class SortedArray extends AbstractSet<Song> implements SortedSet<Song> {
+
+        private final Song[] songs;
+        private final int from;
+        private final int to;
+        private final Comparator<Song> comparator;
+
+        SortedArray(Song[] songs, Comparator<Song> comparator) {
+            this(songs, 0, songs.length, comparator);
+        }
+
+        private SortedArray(Song[] songs, int from, int to, Comparator<Song> comparator) {
+            this.songs = songs;
+            this.from = from;
+            this.to = to;
+            this.comparator = comparator;
+        }
+
+        @Override
+        public Iterator<Song> iterator() {
+            return Arrays.asList(songs).subList(from, to).iterator();
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+        @Override
+        public Comparator<Song> comparator() {
+            return comparator;
+        }
+
+        @Override
+        public Song first() {
+            if (from == to)
+                throw new NoSuchElementException();
+            return songs[from];
+        }
+
+        @Override
+        public Song last() {
+            if (from == to)
+                throw new NoSuchElementException();
+            return songs[to - 1];
+        }
+
+        @Override
+        public SortedSet<Song> subSet(Song fromElement, Song toElement) {
+            if (comparator.compare(fromElement, toElement) > 0)
+                throw new IllegalArgumentException("fromElement > toElement");
+            return new SortedArray(songs, position(fromElement), position(toElement), comparator);
+        }
+
+        @Override
+        public SortedSet<Song> headSet(Song toElement) {
+            return new SortedArray(songs, from, position(toElement), comparator);
+        }
+
+        @Override
+        public SortedSet<Song> tailSet(Song fromElement) {
+            return new SortedArray(songs, position(fromElement), to, comparator);
+        }
+
+        /**
+         * Returns the position in the range of the first song not before the given one.
+         */
+        private int position(Song song) {
+            int position = Arrays.binarySearch(songs, from, to, song, comparator);
+            return (position >= 0) ? position : -position - 1;
+        }
+    }
+}
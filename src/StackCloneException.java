@@ -0,0 +1,16 @@
+/**
+ * The StackCloneException class represents an exception that is thrown
+ * when an element of a stack cannot be cloned while the stack is cloned.
+ * It extends the StackException class.
+ */
+public class StackCloneException extends StackException{
+
+    /**
+     * Constructs a StackCloneException caused by the failure to clone an element.
+     *
+     * @param cause the exception thrown while cloning the element
+     */
+    public StackCloneException(Throwable cause) {
+        super(cause);
+    }
+}
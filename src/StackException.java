@@ -2,4 +2,19 @@
  * The StackException class is a custom exception that is thrown when an error occurs in a stack operation.
  */
 public class StackException extends RuntimeException{
+
+    /**
+     * Constructs a StackException with no cause.
+     */
+    public StackException() {
+    }
+
+    /**
+     * Constructs a StackException caused by another exception.
+     *
+     * @param cause the exception that caused this one
+     */
+    public StackException(Throwable cause) {
+        super(cause);
+    }
 }
\ No newline at end of file
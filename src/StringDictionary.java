@@ -0,0 +1,100 @@
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * The StringDictionary class assigns a small int id to each distinct string it is given,
+ * so that repeated strings are stored once and can be compared by id.
+ * Ids are assigned in order, starting from 0, and never change.
+ * The ids are found through an open-addressing hash table of ints, so each string costs
+ * a few array slots rather than a map entry and a boxed id.
+ */
+class StringDictionary {
+
+    private static final int FREE = -1;
+
+    private String[] strings = new String[16];
+    private int size;
+    private int[] table = newTable(32);
+
+    /**
+     * Returns the id of a string, assigning it a new one if the string was never seen before.
+     *
+     * @param string the string to encode
+     * @return the id of the string
+     */
+    int encode(String string) {
+        int slot = slotOf(string);
+        if (table[slot] != FREE)
+            return table[slot];
+        if (size == strings.length)
+            strings = Arrays.copyOf(strings, size * 2);
+        strings[size] = string;
+        table[slot] = size;
+        size++;
+        if (size * 2 > table.length)
+            rehash();
+        return size - 1;
+    }
+
+    /**
+     * Returns the id of a string without assigning one.
+     *
+     * @param string the string to look up
+     * @return the id of the string, or -1 if it was never encoded
+     */
+    int idOf(String string) {
+        return table[slotOf(string)];
+    }
+
+    /**
+     * Returns the string with the given id.
+     *
+     * @param id the id of the string
+     * @return the string
+     */
+    String decode(int id) {
+        return strings[id];
+    }
+
+    /**
+     * Returns the number of distinct strings in the dictionary.
+     *
+     * @return the number of ids assigned so far
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Finds the slot of the table holding the id of a string, or the free slot where it would go.
+     */
+    private int slotOf(String string) {
+        int mask = table.length - 1;
+        int slot = mix(Objects.hashCode(string)) & mask;
+        while (table[slot] != FREE && !Objects.equals(strings[table[slot]], string))
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void rehash() {
+        table = newTable(table.length * 2);
+        int mask = table.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = mix(Objects.hashCode(strings[id])) & mask;
+            while (table[slot] != FREE)
+                slot = (slot + 1) & mask;
+            table[slot] = id;
+        }
+    }
+
+    private static int[] newTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, FREE);
+        return table;
+    }
+
+    private static int mix(int hash) {
+        int mixed = hash * 0x9E3779B9;
+        return mixed ^ (mixed >>> 16);
+    }
+}
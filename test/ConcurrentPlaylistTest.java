@@ -0,0 +1,88 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrentPlaylistTest {
+
+    @Test
+    void holdsTheGivenSongsInOrder() {
+        List<Song> songs = songs(1000);
+        ConcurrentPlaylist playlist = new ConcurrentPlaylist(songs);
+        assertEquals(1000, playlist.size());
+        assertEquals(songs, list(playlist));
+        for (Song song : songs)
+            assertTrue(playlist.contains(new Song(song.getName(), song.getArtist(), null, 0)));
+        assertFalse(playlist.contains(new Song("Other", "Artist", null, 0)));
+
+        Song added = new Song("Added", "Artist", Song.Genre.POP, 10);
+        playlist.addSong(added);
+        assertTrue(playlist.removeSong(songs.get(500)));
+        assertEquals(1000, playlist.size());
+        assertTrue(playlist.contains(added));
+        assertFalse(playlist.contains(songs.get(500)));
+        assertThrows(SongAlreadyExistsException.class, () -> playlist.addSong(songs.get(0).clone()));
+    }
+
+    @Test
+    void rejectsDuplicateSongs() {
+        List<Song> songs = songs(10);
+        songs.add(songs.get(3).clone());
+        assertThrows(SongAlreadyExistsException.class, () -> new ConcurrentPlaylist(songs));
+    }
+
+    @Test
+    void findsEverySongByDurationAfterADurationChanges() {
+        Song a = new Song("A", "Artist", Song.Genre.POP, 100);
+        Song b = new Song("B", "Artist", Song.Genre.POP, 200);
+        Song c = new Song("C", "Artist", Song.Genre.POP, 240);
+        Song d = new Song("D", "Artist", Song.Genre.POP, 300);
+        ConcurrentPlaylist playlist = new ConcurrentPlaylist(List.of(d, c, b, a));
+        SongQuery query = SongQuery.ALL.withOrder(ScanningOrder.DURATION).withMaxDuration(250);
+        assertEquals(List.of(a, b, c), list(() -> playlist.iterator(query)));
+
+        Iterator<Song> running = playlist.iterator(query);
+        b.setDuration(400);
+        assertEquals(List.of(a, c), list(() -> running));
+        assertEquals(List.of(a, c), list(() -> playlist.iterator(query)));
+        c.setDuration(50);
+        assertEquals(List.of(c, a), list(() -> playlist.iterator(query)));
+    }
+
+    @Test
+    void streamsTheSongsThatPassTheFilters() {
+        List<Song> songs = songs(100);
+        ConcurrentPlaylist playlist = new ConcurrentPlaylist(songs);
+        playlist.filterArtist("Artist 3");
+        playlist.setScanningOrder(ScanningOrder.NAME);
+        List<Song> expected = list(playlist);
+        assertEquals(14, expected.size());
+
+        Stream<Song> stream = playlist.stream();
+        playlist.addSong(new Song("Song 1000", "Artist 3", Song.Genre.POP, 60));
+        assertEquals(expected, stream.collect(Collectors.toList()));
+        assertEquals(15, playlist.stream().count());
+        assertEquals(101, playlist.stream(SongQuery.ALL).count());
+    }
+
+    private static List<Song> songs(int count) {
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < count; i++)
+            songs.add(new Song("Song " + i, "Artist " + i % 7, Song.Genre.values()[i % 3], 60 + i * 37 % 500));
+        return songs;
+    }
+
+    private static List<Song> list(Iterable<Song> songs) {
+        List<Song> list = new ArrayList<>();
+        songs.forEach(list::add);
+        return list;
+    }
+}
@@ -0,0 +1,229 @@
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PlaylistFileTest {
+
+    @TempDir
+    Path directory;
+
+    private Playlist playlist;
+    private Path file;
+
+    @BeforeEach
+    void writeFile() throws IOException {
+        playlist = new Playlist();
+        playlist.addSong(new Song("Waterloo", "ABBA", Song.Genre.POP, 162));
+        playlist.addSong(new Song("Hey Jude", "The Beatles", Song.Genre.ROCK, 431));
+        playlist.addSong(new Song("Jolene", "Dolly Parton", null, 161));
+        playlist.addSong(new Song("Dancing Queen", "ABBA", Song.Genre.DISCO, 231));
+        file = directory.resolve("playlist.bin");
+        PlaylistFile.write(playlist, file);
+    }
+
+    @Test
+    void mapsTheSongsBack() throws IOException {
+        MappedPlaylist mapped = PlaylistFile.map(file);
+        assertEquals(playlist, mapped.toPlaylist());
+        for (ScanningOrder order : ScanningOrder.values()) {
+            SongQuery query = SongQuery.ALL.withOrder(order).withArtist("ABBA");
+            assertEquals(songs(playlist.iterator(query)), songs(mapped.iterator(query)), order.name());
+        }
+    }
+
+    @Test
+    void filtersByArtist() throws IOException {
+        MappedPlaylist mapped = PlaylistFile.map(file);
+        assertEquals(2, songs(mapped.iterator(SongQuery.ALL.withArtist("ABBA"))).size());
+        assertEquals(1, songs(mapped.iterator(SongQuery.ALL.withArtist("Dolly Parton"))).size());
+        assertEquals(0, songs(mapped.iterator(SongQuery.ALL.withArtist("Queen"))).size());
+    }
+
+    @Test
+    void rejectsAFileThatIsNotAPlaylist() throws IOException {
+        Files.writeString(file, "name,artist,genre,duration\n");
+        assertThrows(PlaylistFormatException.class, () -> PlaylistFile.map(file));
+    }
+
+    @Test
+    void rejectsATruncatedFile() throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        for (int length = 0; length < bytes.length; length++) {
+            Files.write(file, Arrays.copyOf(bytes, length));
+            assertThrows(PlaylistFormatException.class, () -> PlaylistFile.map(file), "length " + length);
+        }
+    }
+
+    @Test
+    void rejectsAStringTableEndingPastItsSection() throws IOException {
+        ByteBuffer bytes = read();
+        int names = (int) bytes.getLong(24);
+        bytes.putInt(names + 4 * (bytes.getInt(16) - 1), 100000);
+        assertRejected(bytes);
+    }
+
+    @Test
+    void rejectsAStringTableGoingBackwards() throws IOException {
+        ByteBuffer bytes = read();
+        int artists = (int) bytes.getLong(32);
+        bytes.putInt(artists, bytes.getInt(artists + 4) + 1);
+        assertRejected(bytes);
+    }
+
+    @Test
+    void rejectsAnUnknownNameOrArtist() throws IOException {
+        ByteBuffer bytes = read();
+        int columns = (int) bytes.getLong(40);
+        bytes.putInt(columns + 4, bytes.getInt(16));
+        assertRejected(bytes);
+
+        bytes = read();
+        bytes.putInt(columns + 4 * playlist.size(), -1);
+        assertRejected(bytes);
+    }
+
+    @Test
+    void rejectsAnUnknownGenre() throws IOException {
+        ByteBuffer bytes = read();
+        int columns = (int) bytes.getLong(40);
+        bytes.put(columns + 12 * playlist.size() + 2, (byte) Song.Genre.values().length);
+        assertRejected(bytes);
+    }
+
+    @Test
+    void rejectsAnIndexOfUnknownRows() throws IOException {
+        ByteBuffer bytes = read();
+        int index = (int) bytes.getLong(48);
+        bytes.putInt(index + 4 * (2 * playlist.size() - 1), playlist.size());
+        assertRejected(bytes);
+    }
+
+    @Test
+    void rejectsAnIndexOutOfOrder() throws IOException {
+        int size = playlist.size();
+        for (int section = 0; section < 2; section++) {
+            ByteBuffer bytes = read();
+            int index = (int) bytes.getLong(48) + 4 * size * section;
+            int first = bytes.getInt(index);
+            bytes.putInt(index, bytes.getInt(index + 4));
+            bytes.putInt(index + 4, first);
+            assertRejected(bytes);
+
+            bytes = read();
+            bytes.putInt(index + 4, bytes.getInt(index));
+            assertRejected(bytes);
+        }
+    }
+
+    @Test
+    void mapsAnIndexWithTiesAndCharactersOutsideTheBasicPlane() throws IOException {
+        playlist.addSong(new Song("Waterloo", "Cher", Song.Genre.POP, 162));
+        playlist.addSong(new Song("\uD83C\uDFB5 Notes", "Emoji", null, 231));
+        playlist.addSong(new Song("\uFFFD Replaced", "Emoji", null, 1));
+        playlist.addSong(new Song("\uE000 Private", "Emoji", null, 431));
+        PlaylistFile.write(playlist, file);
+        MappedPlaylist mapped = PlaylistFile.map(file);
+        for (ScanningOrder order : ScanningOrder.values()) {
+            SongQuery query = SongQuery.ALL.withOrder(order);
+            assertEquals(songs(playlist.iterator(query)), songs(mapped.iterator(query)), order.name());
+        }
+    }
+
+    @Test
+    void mapsAnIndexOverANameTableOutOfOrder() throws IOException {
+        String notes = "\uD83C\uDFB5 A";
+        String replaced = "\uE000 AB";
+        playlist.addSong(new Song(notes, "Emoji", null, 231));
+        playlist.addSong(new Song(replaced, "Emoji", null, 1));
+        PlaylistFile.write(playlist, file);
+        ByteBuffer bytes = read();
+        int names = (int) bytes.getLong(24);
+        int count = bytes.getInt(16);
+        int columns = (int) bytes.getLong(40);
+        int first = nameId(bytes, notes);
+        int second = nameId(bytes, replaced);
+        int start = names + 4 * count + bytes.getInt(names + 4 * (first - 1));
+        int otherStart = names + 4 * count + bytes.getInt(names + 4 * (second - 1));
+        for (int i = 0; i < 6; i++) {
+            byte swapped = bytes.get(start + i);
+            bytes.put(start + i, bytes.get(otherStart + i));
+            bytes.put(otherStart + i, swapped);
+        }
+        for (int row = 0; row < playlist.size(); row++) {
+            int id = bytes.getInt(columns + 4 * row);
+            if (id == first || id == second)
+                bytes.putInt(columns + 4 * row, first + second - id);
+        }
+        Files.write(file, bytes.array());
+
+        MappedPlaylist mapped = PlaylistFile.map(file);
+        for (ScanningOrder order : ScanningOrder.values()) {
+            SongQuery query = SongQuery.ALL.withOrder(order);
+            assertEquals(songs(playlist.iterator(query)), songs(mapped.iterator(query)), order.name());
+        }
+    }
+
+    @Test
+    void rejectsAnOverlappingIndex() throws IOException {
+        ByteBuffer bytes = read();
+        bytes.putLong(48, bytes.getLong(40));
+        assertRejected(bytes);
+    }
+
+    @Test
+    void journalRejectsACorruptSnapshot() throws IOException {
+        Path journalDirectory = directory.resolve("journal");
+        Files.createDirectories(journalDirectory);
+        Path snapshot = journalDirectory.resolve("snapshot-1.bin");
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(snapshot, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(PlaylistFormatException.class, () -> PlaylistJournal.open(journalDirectory));
+    }
+
+    /**
+     * Returns the id of a name in the name table of a file, which it is found in past the first one.
+     */
+    private static int nameId(ByteBuffer bytes, String name) {
+        int names = (int) bytes.getLong(24);
+        int count = bytes.getInt(16);
+        byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+        for (int id = 1; id < count; id++) {
+            int start = bytes.getInt(names + 4 * (id - 1));
+            int end = bytes.getInt(names + 4 * id);
+            byte[] string = new byte[end - start];
+            bytes.get(names + 4 * count + start, string);
+            if (Arrays.equals(string, utf8))
+                return id;
+        }
+        throw new AssertionError(name + " is not in the name table");
+    }
+
+    private ByteBuffer read() throws IOException {
+        return ByteBuffer.wrap(Files.readAllBytes(file));
+    }
+
+    private void assertRejected(ByteBuffer bytes) throws IOException {
+        Path corrupt = directory.resolve("corrupt.bin");
+        Files.write(corrupt, bytes.array());
+        assertThrows(PlaylistFormatException.class, () -> PlaylistFile.map(corrupt));
+    }
+
+    private static List<Song> songs(Iterator<Song> iterator) {
+        List<Song> songs = new ArrayList<>();
+        iterator.forEachRemaining(songs::add);
+        return songs;
+    }
+}
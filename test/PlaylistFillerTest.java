@@ -0,0 +1,154 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlaylistFillerTest {
+
+    @Test
+    void picksTheBestTotalOfShortTargets() {
+        Random random = new Random(24);
+        for (int round = 0; round < 1000; round++) {
+            int longest = 1 + random.nextInt(round % 2 == 0 ? 20 : 400);
+            List<Song> songs = songs(random, random.nextInt(13), longest);
+            int target = random.nextInt(6 * longest + 1);
+            List<Song> picked = PlaylistFiller.fill(songs.iterator(), target);
+            assertPickedFrom(songs, picked, target);
+            assertEquals(bruteForce(songs, target), total(picked), "round " + round);
+        }
+    }
+
+    @Test
+    void comesWithinTheLongestSongOfTheBestTotalOfLongTargets() {
+        Random random = new Random(25);
+        for (int round = 0; round < 15; round++) {
+            int longest = 1 + random.nextInt(round % 2 == 0 ? 100000 : 3000);
+            int count = (round % 3 == 0) ? 2000 + random.nextInt(2000) : 5 + random.nextInt(200);
+            List<Song> songs = songs(random, count, longest);
+            int target = (int) Math.min(2_000_000, 1 + random.nextDouble() * songs.stream().mapToLong(Song::getDuration).sum());
+            List<Song> picked = PlaylistFiller.fill(songs.iterator(), target);
+            assertPickedFrom(songs, picked, target);
+            long best = best(songs, target);
+            assertTrue(best - total(picked) < longest, "round " + round + ": " + total(picked) + " of " + best);
+        }
+    }
+
+    @Test
+    void comesWithinTheLongestSongWithTooManyDurationsForTheTable() {
+        List<Song> songs = new ArrayList<>();
+        for (int i = 1; i <= 100; i++)
+            songs.add(new Song("Short " + i, "Artist", null, i));
+        for (int i = 0; i < 3000; i++)
+            songs.add(new Song("Long " + i, "Artist", null, 50000 + 16 * i + i % 7));
+        List<Song> picked = PlaylistFiller.fill(songs.iterator(), 2_000_000);
+        assertPickedFrom(songs, picked, 2_000_000);
+        assertTrue(2_000_000 - total(picked) < 50000 + 16 * 2999 + 2999 % 7, total(picked) + " of 2000000");
+    }
+
+    @Test
+    void takesAllTheSongsThatFit() {
+        List<Song> songs = List.of(new Song("A", "Artist", null, 200), new Song("B", "Artist", null, 0),
+                new Song("C", "Artist", null, 100), new Song("D", "Artist", null, 500), new Song("E", "Artist", null, 100));
+        assertEquals(List.of(songs.get(2), songs.get(4), songs.get(0)), PlaylistFiller.fill(songs.iterator(), 450));
+        assertEquals(List.of(), PlaylistFiller.fill(songs.iterator(), 50));
+    }
+
+    @Test
+    void picksSongsOfEqualDurationInTheGivenOrder() {
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            songs.add(new Song("Song " + i, "Artist", null, 60));
+        songs.add(new Song("Long", "Artist", null, 250));
+        assertEquals(songs.subList(0, 5), PlaylistFiller.fill(songs.iterator(), 300));
+        assertEquals(List.of(songs.get(0), songs.get(10)), PlaylistFiller.fill(songs.iterator(), 310));
+    }
+
+    @Test
+    void fillsFromTheSongsOfAQuery() {
+        Random random = new Random(26);
+        Playlist playlist = new Playlist();
+        for (Song song : songs(random, 200, 600))
+            playlist.addSong(song);
+        SongQuery query = SongQuery.ALL.withGenre(Song.Genre.JAZZ).withMaxDuration(300);
+        Playlist filled = playlist.fill(query, 3600);
+
+        List<Song> matching = new ArrayList<>();
+        playlist.iterator(query).forEachRemaining(matching::add);
+        List<Song> picked = new ArrayList<>();
+        filled.iterator().forEachRemaining(picked::add);
+        assertPickedFrom(matching, picked, 3600);
+        assertEquals(best(matching, 3600), filled.getTotalDuration());
+    }
+
+    private static List<Song> songs(Random random, int count, int longest) {
+        List<Song> songs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Song.Genre genre = random.nextBoolean() ? Song.Genre.JAZZ : Song.Genre.POP;
+            songs.add(new Song("Song " + i, "Artist", genre, random.nextInt(longest + 1)));
+        }
+        return songs;
+    }
+
+    private static void assertPickedFrom(List<Song> songs, List<Song> picked, int target) {
+        Set<Song> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Song song : picked) {
+            assertTrue(songs.contains(song) && songs.get(songs.indexOf(song)) == song, song + " was not given");
+            assertTrue(distinct.add(song), song + " was picked twice");
+        }
+        assertTrue(total(picked) <= target, total(picked) + " exceeds " + target);
+    }
+
+    private static long total(List<Song> songs) {
+        return songs.stream().mapToLong(Song::getDuration).sum();
+    }
+
+    /**
+     * Returns the best total of the songs not exceeding the target, trying every subset of them.
+     */
+    private static long bruteForce(List<Song> songs, int target) {
+        long best = 0;
+        for (int subset = 0; subset < 1 << songs.size(); subset++) {
+            long total = 0;
+            for (int i = 0; i < songs.size(); i++) {
+                if ((subset & 1 << i) != 0)
+                    total += songs.get(i).getDuration();
+            }
+            if (total <= target)
+                best = Math.max(best, total);
+        }
+        return best;
+    }
+
+    /**
+     * Returns the best total of the songs not exceeding the target, from the set of the totals
+     * their subsets reach, one bit per second.
+     */
+    private static long best(List<Song> songs, int target) {
+        long[] reached = new long[target / 64 + 1];
+        reached[0] = 1;
+        for (Song song : songs) {
+            int duration = song.getDuration();
+            if (duration == 0 || duration > target)
+                continue;
+            int words = duration / 64;
+            int bits = duration % 64;
+            for (int i = reached.length - 1; i >= words; i--) {
+                long shifted = reached[i - words] << bits;
+                if (bits != 0 && i - words > 0)
+                    shifted |= reached[i - words - 1] >>> (64 - bits);
+                reached[i] |= shifted;
+            }
+        }
+        for (int total = target; ; total--) {
+            if ((reached[total / 64] & 1L << total) != 0)
+                return total;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PlaylistJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private final Song waterloo = new Song("Waterloo", "ABBA", Song.Genre.POP, 162);
+    private final Song jolene = new Song("Jolene", "Dolly Parton", Song.Genre.COUNTRY, 161);
+    private final Song heyJude = new Song("Hey Jude", "The Beatles", Song.Genre.ROCK, 431);
+
+    @Test
+    void recoversTheCommittedChanges() throws IOException {
+        try (PlaylistJournal journal = PlaylistJournal.open(directory)) {
+            journal.addSong(waterloo.clone());
+            journal.addSong(jolene.clone());
+            journal.addSong(heyJude.clone());
+            journal.removeSong(jolene);
+            journal.setGenre(waterloo, Song.Genre.DISCO);
+            journal.setDuration(heyJude, 425);
+        }
+
+        try (PlaylistJournal journal = PlaylistJournal.open(directory)) {
+            Playlist playlist = journal.playlist();
+            assertEquals(2, playlist.size());
+            assertNull(playlist.member(jolene));
+            assertEquals(Song.Genre.DISCO, playlist.member(waterloo).getGenre());
+            assertEquals(425, playlist.member(heyJude).getDuration());
+        }
+    }
+
+    @Test
+    void dropsATornLastRecord() throws IOException {
+        try (PlaylistJournal journal = PlaylistJournal.open(directory)) {
+            journal.addSong(waterloo.clone());
+            journal.addSong(jolene.clone());
+        }
+        Path log = directory.resolve("journal-0.log");
+        long complete = Files.size(log);
+        try (PlaylistJournal journal = PlaylistJournal.open(directory)) {
+            journal.setDuration(jolene, 200);
+        }
+        byte[] bytes = Files.readAllBytes(log);
+
+        for (int length = (int) complete; length < bytes.length; length++) {
+            Files.write(log, Arrays.copyOf(bytes, length));
+            try (PlaylistJournal journal = PlaylistJournal.open(directory)) {
+                assertEquals(2, journal.playlist().size(), "length " + length);
+                assertEquals(161, journal.playlist().member(jolene).getDuration(), "length " + length);
+            }
+            assertEquals(complete, Files.size(log), "torn record not truncated at length " + length);
+        }
+    }
+
+    @Test
+    void appendsAfterATornRecordIsDropped() throws IOException {
+        try (PlaylistJournal journal = PlaylistJournal.open(directory)) {
+            journal.addSong(waterloo.clone());
+            journal.addSong(jolene.clone());
+        }
+        Path log = directory.resolve("journal-0.log");
+        byte[] bytes = Files.readAllBytes(log);
+        Files.write(log, Arrays.copyOf(bytes, bytes.length - 3));
+
+        try (PlaylistJournal journal = PlaylistJournal.open(directory)) {
+            assertNull(journal.playlist().member(jolene));
+            journal.addSong(heyJude.clone());
+        }
+        try (PlaylistJournal journal = PlaylistJournal.open(directory)) {
+            assertEquals(2, journal.playlist().size());
+            assertNotNull(journal.playlist().member(heyJude));
+        }
+    }
+
+    @Test
+    void dropsARecordWithABadChecksum() throws IOException {
+        try (PlaylistJournal journal = PlaylistJournal.open(directory)) {
+            journal.addSong(waterloo.clone());
+            journal.addSong(jolene.clone());
+        }
+        Path log = directory.resolve("journal-0.log");
+        byte[] bytes = Files.readAllBytes(log);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(log, bytes);
+
+        try (PlaylistJournal journal = PlaylistJournal.open(directory)) {
+            assertEquals(1, journal.playlist().size());
+            assertNull(journal.playlist().member(jolene));
+        }
+    }
+
+    @Test
+    void rejectsADamagedRecordBeforeTheLastOne() throws IOException {
+        try (PlaylistJournal journal = PlaylistJournal.open(directory)) {
+            journal.addSong(waterloo.clone());
+        }
+        Path log = directory.resolve("journal-0.log");
+        int first = (int) Files.size(log);
+        try (PlaylistJournal journal = PlaylistJournal.open(directory)) {
+            journal.addSong(jolene.clone());
+            journal.addSong(heyJude.clone());
+        }
+        byte[] bytes = Files.readAllBytes(log);
+
+        byte[] damaged = bytes.clone();
+        damaged[first + 12] ^= 1;
+        Files.write(log, damaged);
+        assertThrows(PlaylistFormatException.class, () -> PlaylistJournal.open(directory));
+        assertEquals(bytes.length, Files.size(log));
+
+        damaged = bytes.clone();
+        ByteBuffer.wrap(damaged).putInt(first, 0);
+        Files.write(log, damaged);
+        assertThrows(PlaylistFormatException.class, () -> PlaylistJournal.open(directory));
+        assertEquals(bytes.length, Files.size(log));
+    }
+
+    @Test
+    void dropsZeroesAtTheEndOfTheJournal() throws IOException {
+        try (PlaylistJournal journal = PlaylistJournal.open(directory)) {
+            journal.addSong(waterloo.clone());
+        }
+        Path log = directory.resolve("journal-0.log");
+        long complete = Files.size(log);
+        Files.write(log, new byte[64], StandardOpenOption.APPEND);
+
+        try (PlaylistJournal journal = PlaylistJournal.open(directory)) {
+            assertEquals(1, journal.playlist().size());
+        }
+        assertEquals(complete, Files.size(log));
+    }
+
+    @Test
+    void rejectsAJournalTooLargeToReplay() throws IOException {
+        Path log = directory.resolve("journal-0.log");
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1}), Integer.MAX_VALUE);
+        }
+        assertThrows(PlaylistFormatException.class, () -> PlaylistJournal.open(directory));
+        assertEquals(Integer.MAX_VALUE + 1L, Files.size(log));
+    }
+
+    @Test
+    void recoversFromASnapshotAndATornJournal() throws IOException {
+        try (PlaylistJournal journal = PlaylistJournal.open(directory)) {
+            journal.addSong(waterloo.clone());
+            journal.addSong(jolene.clone());
+            journal.commit();
+            journal.compact();
+            journal.addSong(heyJude.clone());
+        }
+        assertFalse(Files.exists(directory.resolve("journal-0.log")));
+        Path log = directory.resolve("journal-1.log");
+        Files.write(log, new byte[]{0, 0, 1}, StandardOpenOption.APPEND);
+
+        try (PlaylistJournal journal = PlaylistJournal.open(directory)) {
+            assertEquals(3, journal.playlist().size());
+        }
+    }
+}
@@ -0,0 +1,242 @@
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PlaylistTest {
+
+    private final Song a = new Song("A", "Artist", Song.Genre.POP, 100);
+    private final Song b = new Song("B", "Artist", Song.Genre.POP, 200);
+    private final Song c = new Song("C", "Other", Song.Genre.ROCK, 300);
+    private final Song d = new Song("D", "Other", Song.Genre.POP, 400);
+
+    @Test
+    void openScansKeepGoingOverTheIndexesAsTheyWere() {
+        Playlist playlist = new Playlist(List.of(a, b, c, d));
+        Iterator<Song> byDuration = playlist.iterator(SongQuery.ALL.withOrder(ScanningOrder.DURATION));
+        Iterator<Song> pop = playlist.iterator(SongQuery.ALL.withGenre(Song.Genre.POP));
+        assertEquals(a, byDuration.next());
+        assertEquals(a, pop.next());
+
+        b.setDuration(500);
+        b.setGenre(Song.Genre.ROCK);
+        assertEquals(List.of(b, c, d), list(byDuration));
+        assertEquals(List.of(b, d), list(pop));
+
+        assertEquals(List.of(a, c, d, b), list(playlist.iterator(SongQuery.ALL.withOrder(ScanningOrder.DURATION))));
+        assertEquals(List.of(a, d), list(playlist.iterator(SongQuery.ALL.withGenre(Song.Genre.POP))));
+    }
+
+    @Test
+    void songChangesAfterAScanEndsUpdateTheIndexes() {
+        Playlist playlist = new Playlist(List.of(a, b, c, d));
+        SongQuery first = SongQuery.ALL.withOrder(ScanningOrder.DURATION).withLimit(1);
+        assertEquals(List.of(a), list(playlist.iterator(first)));
+        assertEquals(List.of(a, b, d), list(playlist.iterator(SongQuery.ALL.withGenre(Song.Genre.POP))));
+
+        a.setDuration(450);
+        d.setGenre(Song.Genre.ROCK);
+        assertEquals(List.of(b), list(playlist.iterator(first)));
+        assertEquals(List.of(b, c, d, a), list(playlist.iterator(SongQuery.ALL.withOrder(ScanningOrder.DURATION))));
+        assertEquals(List.of(a, b), list(playlist.iterator(SongQuery.ALL.withGenre(Song.Genre.POP))));
+        assertEquals(450, playlist.getLongestDuration());
+    }
+
+    @Test
+    void pooledPlaylistsFollowTheChangesOfTheirSharedSongs() {
+        SongPool pool = new SongPool();
+        List<Playlist> playlists = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Playlist playlist = new Playlist(pool);
+            playlist.addSong(new Song("A", "Artist", Song.Genre.POP, 100));
+            playlist.addSong(new Song("Song " + i, "Artist", Song.Genre.ROCK, 10));
+            playlists.add(playlist);
+        }
+        Song shared = playlists.get(0).iterator().next();
+        for (int i = 0; i < 100; i += 2)
+            playlists.get(i).removeSong(shared);
+
+        shared.setDuration(250);
+        shared.setGenre(Song.Genre.JAZZ);
+        for (int i = 0; i < 100; i++) {
+            Playlist playlist = playlists.get(i);
+            boolean holds = i % 2 == 1;
+            assertEquals(holds ? 260 : 10, playlist.getTotalDuration(), "playlist " + i);
+            assertEquals(holds ? 250 : 0, playlist.getGenreDuration(Song.Genre.JAZZ), "playlist " + i);
+            assertEquals(0, playlist.getGenreCount(Song.Genre.POP), "playlist " + i);
+            assertEquals(holds ? List.of(shared) : List.of(),
+                    list(playlist.iterator(SongQuery.ALL.withGenre(Song.Genre.JAZZ))), "playlist " + i);
+        }
+    }
+
+    @Test
+    void pooledPlaylistsAddTheSongsOfThePoolAsTheyAre() {
+        SongPool pool = new SongPool();
+        Song pooled = pool.song("A", "Artist", Song.Genre.POP, 100);
+        Playlist playlist = new Playlist(pool);
+        Song other = new Song("A", "Artist", Song.Genre.ROCK, 300);
+        List<Song> skipped = playlist.addAll(List.of(other, new Song("A", "Artist", null, 50), b));
+
+        assertEquals(List.of(pooled, b), list(playlist.iterator()));
+        assertSame(pooled, playlist.iterator().next());
+        assertEquals(300, playlist.getTotalDuration());
+        assertEquals(0, playlist.getGenreCount(Song.Genre.ROCK));
+        assertEquals(1, skipped.size());
+        assertSame(pooled, skipped.get(0));
+    }
+
+    @Test
+    void aClonedPlaylistFollowsTheChangesOfItsSongs() {
+        Playlist playlist = new Playlist(List.of(a, b));
+        Playlist copy = playlist.clone();
+        a.setDuration(1000);
+        assertEquals(1200, playlist.getTotalDuration());
+        assertEquals(1200, playlist.getGenreDuration(Song.Genre.POP));
+        assertEquals(1000, playlist.getLongestDuration());
+        assertEquals(300, copy.getTotalDuration());
+        assertEquals(300, copy.getGenreDuration(Song.Genre.POP));
+        assertEquals(200, copy.getLongestDuration());
+    }
+
+    @Test
+    void clonedPlaylistsKeepTheirAggregatesAndIndexesThroughChanges() {
+        Playlist playlist = new Playlist(List.of(a, b, c, d));
+        for (ScanningOrder order : ScanningOrder.values())
+            list(playlist.iterator(SongQuery.ALL.withOrder(order).withGenre(Song.Genre.POP)));
+        Playlist copy = playlist.clone();
+        Playlist copyOfCopy = copy.clone();
+
+        c.setGenre(Song.Genre.POP);
+        b.setDuration(50);
+        Playlist later = playlist.clone();
+        d.setDuration(10);
+        a.setGenre(null);
+
+        assertConsistent(playlist, List.of(a, b, c, d));
+        assertConsistent(later, List.of(
+                new Song("A", "Artist", Song.Genre.POP, 100), new Song("B", "Artist", Song.Genre.POP, 50),
+                new Song("C", "Other", Song.Genre.POP, 300), new Song("D", "Other", Song.Genre.POP, 400)));
+        List<Song> original = List.of(
+                new Song("A", "Artist", Song.Genre.POP, 100), new Song("B", "Artist", Song.Genre.POP, 200),
+                new Song("C", "Other", Song.Genre.ROCK, 300), new Song("D", "Other", Song.Genre.POP, 400));
+        assertConsistent(copy, original);
+        assertConsistent(copyOfCopy, original);
+    }
+
+    @Test
+    void aDroppedCloneStopsSharingTheSongs() throws ReflectiveOperationException {
+        Playlist playlist = new Playlist(List.of(a, b));
+        Object store = store(playlist);
+        WeakReference<Playlist> dropped = new WeakReference<>(playlist.clone());
+        for (int i = 0; i < 50 && dropped.get() != null; i++)
+            System.gc();
+        assertNull(dropped.get());
+
+        playlist.addSong(c);
+        assertSame(store, store(playlist));
+
+        Playlist kept = playlist.clone();
+        playlist.addSong(d);
+        assertNotSame(store, store(playlist));
+        assertEquals(3, kept.size());
+    }
+
+    @Test
+    void clonesReadFromManyThreadsGetSongsOfTheirOwn() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int round = 0; round < 50; round++) {
+                List<Song> songs = new ArrayList<>();
+                for (int i = 0; i < 200; i++)
+                    songs.add(new Song("Song " + i, "Artist", Song.Genre.POP, 100 + i));
+                Playlist playlist = new Playlist(songs);
+                List<Playlist> clones = new ArrayList<>();
+                for (int i = 0; i < 8; i++)
+                    clones.add(playlist.clone());
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<List<Song>>> read = new ArrayList<>();
+                for (Playlist clone : clones) {
+                    read.add(executor.submit(() -> {
+                        start.await();
+                        return list(clone.iterator());
+                    }));
+                }
+                start.countDown();
+                for (Future<List<Song>> future : read) {
+                    List<Song> cloned = future.get();
+                    assertEquals(songs, cloned);
+                    for (int i = 0; i < songs.size(); i++)
+                        assertNotSame(songs.get(i), cloned.get(i), "round " + round);
+                }
+
+                songs.get(0).setDuration(1);
+                playlist.addSong(new Song("Added", "Artist", Song.Genre.POP, 1));
+                for (Playlist clone : clones) {
+                    assertEquals(200, clone.size());
+                    assertNotEquals(1, clone.getShortestDuration());
+                }
+                assertEquals(201, playlist.size());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Object store(Playlist playlist) throws ReflectiveOperationException {
+        Field store = Playlist.class.getDeclaredField("store");
+        store.setAccessible(true);
+        return store.get(playlist);
+    }
+
+    /**
+     * Checks the aggregates and the scans of a playlist against a playlist built from the songs it
+     * should hold, with the same names and values.
+     */
+    private static void assertConsistent(Playlist playlist, List<Song> songs) {
+        List<Song> copies = new ArrayList<>();
+        for (Song song : songs)
+            copies.add(song.clone());
+        Playlist expected = new Playlist(copies);
+        assertEquals(expected.getTotalDuration(), playlist.getTotalDuration());
+        assertEquals(expected.getShortestDuration(), playlist.getShortestDuration());
+        assertEquals(expected.getLongestDuration(), playlist.getLongestDuration());
+        for (Song.Genre genre : Song.Genre.values()) {
+            assertEquals(expected.getGenreCount(genre), playlist.getGenreCount(genre), genre.name());
+            assertEquals(expected.getGenreDuration(genre), playlist.getGenreDuration(genre), genre.name());
+        }
+        assertEquals(expected.getGenreCount(null), playlist.getGenreCount(null));
+        for (ScanningOrder order : ScanningOrder.values()) {
+            for (Song.Genre genre : new Song.Genre[]{null, Song.Genre.POP, Song.Genre.ROCK}) {
+                SongQuery query = SongQuery.ALL.withOrder(order).withGenre(genre);
+                assertEquals(describe(expected.iterator(query)), describe(playlist.iterator(query)), query.toString());
+                query = query.withMaxDuration(150);
+                assertEquals(describe(expected.iterator(query)), describe(playlist.iterator(query)), query.toString());
+            }
+        }
+    }
+
+    private static List<String> describe(Iterator<Song> songs) {
+        List<String> described = new ArrayList<>();
+        songs.forEachRemaining(song -> described.add(song.toString()));
+        return described;
+    }
+
+    private static List<Song> list(Iterator<Song> songs) {
+        List<Song> list = new ArrayList<>();
+        songs.forEachRemaining(list::add);
+        return list;
+    }
+}
@@ -0,0 +1,86 @@
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ShufflePermutationTest {
+
+    @Test
+    void isAPermutationOfThePositions() {
+        List<Integer> sizes = new ArrayList<>();
+        for (int size = 0; size <= 300; size++)
+            sizes.add(size);
+        sizes.addAll(List.of(1 << 16, (1 << 16) + 1, (1 << 17) - 1, 100003, (1 << 18) + 3));
+        for (int size : sizes) {
+            for (long seed : new long[]{0, 1, -1, 42, Long.MIN_VALUE}) {
+                ShufflePermutation permutation = new ShufflePermutation(size, seed);
+                assertEquals(size, permutation.size());
+                BitSet seen = new BitSet(size);
+                for (int position = 0; position < size; position++) {
+                    int shuffled = permutation.get(position);
+                    assertTrue(shuffled >= 0 && shuffled < size, "size " + size + ", seed " + seed);
+                    assertFalse(seen.get(shuffled), "size " + size + ", seed " + seed + ": " + shuffled + " twice");
+                    seen.set(shuffled);
+                }
+            }
+        }
+    }
+
+    @Test
+    void dependsOnlyOnTheSeed() {
+        ShufflePermutation first = new ShufflePermutation(1000, 7);
+        ShufflePermutation second = new ShufflePermutation(1000, 7);
+        for (int position = 0; position < 1000; position++)
+            assertEquals(first.get(position), second.get(position));
+
+        Set<List<Integer>> orders = new HashSet<>();
+        for (long seed = 0; seed < 20; seed++)
+            orders.add(positions(new ShufflePermutation(1000, seed)));
+        assertEquals(20, orders.size());
+        List<Integer> identity = positions(new ShufflePermutation(1000, 0));
+        identity.sort(null);
+        assertNotEquals(identity, positions(new ShufflePermutation(1000, 0)));
+    }
+
+    @Test
+    void shufflesThePlaylistSongsOnceEach() {
+        Playlist playlist = new Playlist();
+        for (int i = 0; i < 500; i++)
+            playlist.addSong(new Song("Song " + i, "Artist " + i % 9, Song.Genre.values()[i % 3], 60 + i % 240));
+        for (int i = 0; i < 500; i += 7)
+            playlist.removeSong(new Song("Song " + i, "Artist " + i % 9, null, 0));
+        for (SongQuery filters : new SongQuery[]{SongQuery.ALL, SongQuery.ALL.withArtist("Artist 4"),
+                SongQuery.ALL.withGenre(Song.Genre.POP).withMaxDuration(100)}) {
+            SongQuery query = filters.withOrder(ScanningOrder.SHUFFLE).withSeed(3);
+            List<Song> shuffled = songs(playlist, query);
+            assertEquals(new HashSet<>(songs(playlist, filters)), new HashSet<>(shuffled), filters.toString());
+            assertEquals(songs(playlist, filters).size(), shuffled.size(), filters.toString());
+            assertEquals(shuffled, songs(playlist, query));
+            List<Song> paged = new ArrayList<>();
+            for (int offset = 0; offset < shuffled.size(); offset += 10)
+                paged.addAll(songs(playlist, query.withOffset(offset).withLimit(10)));
+            assertEquals(shuffled, paged, filters.toString());
+        }
+    }
+
+    private static List<Integer> positions(ShufflePermutation permutation) {
+        List<Integer> positions = new ArrayList<>();
+        for (int position = 0; position < permutation.size(); position++)
+            positions.add(permutation.get(position));
+        return positions;
+    }
+
+    private static List<Song> songs(Playlist playlist, SongQuery query) {
+        List<Song> songs = new ArrayList<>();
+        playlist.iterator(query).forEachRemaining(songs::add);
+        return songs;
+    }
+}
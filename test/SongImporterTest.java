@@ -0,0 +1,105 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SongImporterTest {
+
+    @Test
+    void importsLinesAndReportsDuplicatesAndErrors() throws IOException {
+        Playlist playlist = new Playlist();
+        String lines = "Waterloo, ABBA, POP, 2:42\n" +
+                "\"Hello, Goodbye\", The Beatles, rock, 3:29\n" +
+                "Waterloo, ABBA, POP, 2:42\n" +
+                "Jolene, Dolly Parton, , 2:41\n" +
+                "Broken line\n";
+        ImportReport report = SongImporter.csv().importInto(playlist, new StringReader(lines));
+        assertEquals(3, report.getAddedCount());
+        assertEquals(List.of(3), report.getDuplicateLines());
+        assertEquals(1, report.getErrors().size());
+        assertEquals(3, playlist.size());
+    }
+
+    @Test
+    void keepsThePlaylistConsistentWhenReadingFails() {
+        Playlist playlist = new Playlist();
+        for (int i = 0; i < 20; i++)
+            playlist.addSong(new Song("Old " + (char) ('a' + i), "Artist " + i % 3, Song.Genre.values()[i % 3], 100 + 7 * i));
+        assertEquals(20, names(playlist, SongQuery.ALL.withOrder(ScanningOrder.NAME)).size());
+        assertEquals(20, names(playlist, SongQuery.ALL.withOrder(ScanningOrder.DURATION)).size());
+        assertEquals(7, names(playlist, SongQuery.ALL.withGenre(Song.Genre.POP).withOrder(ScanningOrder.NAME)).size());
+
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < 12; i++)
+            lines.append("New ").append((char) ('a' + i)).append(", Artist ").append(i % 3)
+                    .append(", ").append(Song.Genre.values()[i % 3]).append(", 1:").append(10 + i).append('\n');
+        assertThrows(IOException.class, () -> SongImporter.csv().importInto(playlist, failingAfter(lines.toString())));
+
+        assertEquals(32, playlist.size());
+        for (ScanningOrder order : ScanningOrder.values())
+            assertEquals(32, names(playlist, SongQuery.ALL.withOrder(order)).size(), order.name());
+        List<String> byName = names(playlist, SongQuery.ALL.withOrder(ScanningOrder.NAME));
+        List<String> sorted = new ArrayList<>(byName);
+        sorted.sort(null);
+        assertEquals(sorted, byName);
+        assertEquals(playlist.getGenreCount(Song.Genre.POP),
+                names(playlist, SongQuery.ALL.withGenre(Song.Genre.POP).withOrder(ScanningOrder.NAME)).size());
+        assertEquals(playlist.getGenreCount(Song.Genre.POP),
+                names(playlist, SongQuery.ALL.withGenre(Song.Genre.POP).withMaxDuration(1000)).size());
+        assertEquals(70, playlist.getShortestDuration());
+    }
+
+    @Test
+    void keepsThePlaylistConsistentWhenTheSongsFail() {
+        Playlist playlist = new Playlist();
+        playlist.addSong(new Song("First", "A", Song.Genre.JAZZ, 300));
+        playlist.addSong(new Song("Second", "A", Song.Genre.JAZZ, 200));
+        playlist.addSong(new Song("Third", "B", Song.Genre.ROCK, 100));
+        names(playlist, SongQuery.ALL.withOrder(ScanningOrder.DURATION));
+        Iterable<Song> failing = () -> List.of("Fourth", "").stream().map(name -> {
+            if (name.isEmpty())
+                throw new IllegalStateException("no more songs");
+            return new Song(name, "B", Song.Genre.JAZZ, 50);
+        }).iterator();
+
+        assertThrows(IllegalStateException.class, () -> playlist.addAll(failing));
+        assertEquals(4, playlist.size());
+        assertEquals(List.of("Fourth", "Third", "Second", "First"),
+                names(playlist, SongQuery.ALL.withOrder(ScanningOrder.DURATION)));
+        assertEquals(List.of("First", "Second", "Fourth"), names(playlist, SongQuery.ALL.withGenre(Song.Genre.JAZZ)));
+        assertEquals(550, playlist.getGenreDuration(Song.Genre.JAZZ));
+    }
+
+    private static List<String> names(Playlist playlist, SongQuery query) {
+        List<String> names = new ArrayList<>();
+        playlist.iterator(query).forEachRemaining(song -> names.add(song.getName()));
+        return names;
+    }
+
+    /**
+     * Returns a reader of the given text that fails when read past it.
+     */
+    private static Reader failingAfter(String text) {
+        return new Reader() {
+            private final StringReader lines = new StringReader(text);
+
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                int read = lines.read(buffer, offset, length);
+                if (read < 0)
+                    throw new IOException("connection reset");
+                return read;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}